@@ -0,0 +1,92 @@
+package com.isgneuro.nifi.tools.benchmarks;
+
+import com.isgneuro.nifi.tools.bloom.BloomFilterCalculator;
+import com.isgneuro.nifi.tools.bloom.BloomWithTokens;
+import com.isgneuro.nifi.tools.bloom.StringSegmenter;
+import org.apache.nifi.serialization.MalformedRecordException;
+import org.apache.nifi.serialization.record.Record;
+import org.apache.spark.util.sketch.BloomFilter;
+import org.apache.spark.util.sketch.IncompatibleMergeException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of the BloomFilterCalculator path. Filters are sized with the processor defaults.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BloomBenchmark {
+    static final long EXPECTED_NUM_TOKENS = 100000L;
+    static final double FPP = 0.05;
+
+    @State(Scope.Benchmark)
+    public static class TokensState {
+        @Param({"1000", "10000", "100000"})
+        public int numTokens;
+
+        public Set<String> tokens;
+        public BloomFilter target;
+        public BloomFilter other;
+
+        @Setup
+        public void setUp() {
+            tokens = new HashSet<>(numTokens);
+            for (int i = 0; i < numTokens; i++) {
+                tokens.add("token" + i);
+            }
+            target = new BloomWithTokens(BloomFilter.create(EXPECTED_NUM_TOKENS, FPP), tokens).getBloomFilter();
+            other = BloomFilter.create(EXPECTED_NUM_TOKENS, FPP);
+            for (int i = 0; i < numTokens; i++) {
+                other.putString("other" + i);
+            }
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class RecordsState {
+        @Param({"100", "1000"})
+        public int numRecords;
+
+        public List<Record> records;
+        public StringSegmenter segmenter;
+
+        @Setup
+        public void setUp() {
+            records = ListRecordReader.rawRecords(LogSamples.mixed(numRecords));
+            segmenter = new StringSegmenter();
+        }
+    }
+
+    @Benchmark
+    public BloomWithTokens construct(TokensState state) {
+        return new BloomWithTokens(BloomFilter.create(EXPECTED_NUM_TOKENS, FPP), state.tokens);
+    }
+
+    @Benchmark
+    public BloomFilter mergeInPlace(TokensState state) throws IncompatibleMergeException {
+        return state.target.mergeInPlace(state.other);
+    }
+
+    @Benchmark
+    public BloomWithTokens calcBloom(RecordsState state) throws IOException, MalformedRecordException {
+        return BloomFilterCalculator.calcBloom(new ListRecordReader(state.records), state.segmenter, EXPECTED_NUM_TOKENS, FPP);
+    }
+}
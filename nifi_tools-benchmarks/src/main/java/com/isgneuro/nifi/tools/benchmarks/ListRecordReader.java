@@ -0,0 +1,54 @@
+package com.isgneuro.nifi.tools.benchmarks;
+
+import org.apache.nifi.serialization.RecordReader;
+import org.apache.nifi.serialization.SimpleRecordSchema;
+import org.apache.nifi.serialization.record.MapRecord;
+import org.apache.nifi.serialization.record.Record;
+import org.apache.nifi.serialization.record.RecordField;
+import org.apache.nifi.serialization.record.RecordFieldType;
+import org.apache.nifi.serialization.record.RecordSchema;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * In-memory record reader, so that benchmarks measure tokenizing and not the record format parsing.
+ */
+public class ListRecordReader implements RecordReader {
+    static final RecordSchema RAW_SCHEMA = new SimpleRecordSchema(
+            Collections.singletonList(new RecordField("_raw", RecordFieldType.STRING.getDataType(), true)));
+
+    private final Iterator<Record> records;
+
+    public ListRecordReader(List<Record> records) {
+        this.records = records.iterator();
+    }
+
+    public static List<Record> rawRecords(List<String> lines) {
+        final List<Record> records = new ArrayList<>(lines.size());
+        for (String line : lines) {
+            final Map<String, Object> values = new HashMap<>();
+            values.put("_raw", line);
+            records.add(new MapRecord(RAW_SCHEMA, values));
+        }
+        return records;
+    }
+
+    @Override
+    public Record nextRecord(boolean coerceTypes, boolean dropUnknownFields) {
+        return records.hasNext() ? records.next() : null;
+    }
+
+    @Override
+    public RecordSchema getSchema() {
+        return RAW_SCHEMA;
+    }
+
+    @Override
+    public void close() {
+    }
+}
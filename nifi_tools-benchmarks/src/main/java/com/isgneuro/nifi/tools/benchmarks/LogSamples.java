@@ -0,0 +1,70 @@
+package com.isgneuro.nifi.tools.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class LogSamples {
+    public static final String SYSLOG = "<34>Oct 11 22:14:15 mymachine su: 'su root' failed for lonvick on /dev/pts/8";
+
+    public static final String STACKTRACE = "2022-07-12 10:15:32,481 ERROR [Timer-Driven Process Thread-7] "
+            + "o.a.n.p.standard.PutDatabaseRecord PutDatabaseRecord[id=0b1f3c2a-0181-1000-ffff-ffffb5a0d3e1] "
+            + "Failed to put Records to database for StandardFlowFileRecord[uuid=8e0b7d3c-6f6d-4c2f-9a1a-2d5e0c9f1b77]\n"
+            + "java.sql.SQLException: Cannot get a connection, pool error Timeout waiting for idle object\n"
+            + "\tat org.apache.commons.dbcp2.PoolingDataSource.getConnection(PoolingDataSource.java:142)\n"
+            + "\tat org.apache.commons.dbcp2.BasicDataSource.getConnection(BasicDataSource.java:1563)\n"
+            + "\tat org.apache.nifi.dbcp.DBCPConnectionPool.getConnection(DBCPConnectionPool.java:456)\n"
+            + "\tat org.apache.nifi.processors.standard.PutDatabaseRecord.onTrigger(PutDatabaseRecord.java:691)\n"
+            + "\tat org.apache.nifi.processor.AbstractProcessor.onTrigger(AbstractProcessor.java:27)\n"
+            + "\tat org.apache.nifi.controller.StandardProcessorNode.onTrigger(StandardProcessorNode.java:1273)\n"
+            + "\tat org.apache.nifi.controller.tasks.ConnectableTask.invoke(ConnectableTask.java:214)\n"
+            + "\tat org.apache.nifi.controller.scheduling.TimerDrivenSchedulingAgent$1.run(TimerDrivenSchedulingAgent.java:103)\n"
+            + "\tat java.util.concurrent.Executors$RunnableAdapter.call(Executors.java:511)\n"
+            + "\tat java.util.concurrent.FutureTask.runAndReset(FutureTask.java:308)\n"
+            + "\tat java.util.concurrent.ScheduledThreadPoolExecutor$ScheduledFutureTask.run(ScheduledThreadPoolExecutor.java:294)\n"
+            + "\tat java.util.concurrent.ThreadPoolExecutor.runWorker(ThreadPoolExecutor.java:1149)\n"
+            + "\tat java.util.concurrent.ThreadPoolExecutor$Worker.run(ThreadPoolExecutor.java:624)\n"
+            + "\tat java.lang.Thread.run(Thread.java:750)\n"
+            + "Caused by: java.util.NoSuchElementException: Timeout waiting for idle object\n"
+            + "\tat org.apache.commons.pool2.impl.GenericObjectPool.borrowObject(GenericObjectPool.java:451)\n"
+            + "\tat org.apache.commons.pool2.impl.GenericObjectPool.borrowObject(GenericObjectPool.java:365)\n"
+            + "\tat org.apache.commons.dbcp2.PoolingDataSource.getConnection(PoolingDataSource.java:134)\n"
+            + "\t... 13 common frames omitted";
+
+    public static final String JSON = "{\"_time\":\"2022-07-12T10:15:32.481+03:00\",\"host\":\"web-04.prod.local\","
+            + "\"src_ip\":\"10.12.4.181\",\"method\":\"POST\",\"uri\":\"/api/v2/orders/checkout\",\"status\":\"502\","
+            + "\"bytes\":\"5312\",\"latency_ms\":\"1843\",\"user_agent\":\"Mozilla/5.0 (X11; Linux x86_64) AppleWebKit/537.36\","
+            + "\"referer\":\"https://shop.example.com/cart\",\"user\":\"ivan.petrov@example.com\","
+            + "\"message\":\"upstream prematurely closed connection while reading response header from upstream\"}";
+
+    public static final String HTML_ESCAPED = "GET /search?q=%D0%BF%D1%80%D0%B8%D0%B2%D0%B5%D1%82&amp;lang=ru HTTP/1.1 "
+            + "&lt;div class=&quot;result&quot;&gt;Found 12 results for &laquo;priv&eacute;t&raquo; in 0.034s&lt;/div&gt; "
+            + "referer=&quot;https://portal.example.com/index.php?page=2&amp;sort=desc&quot; "
+            + "cookie=&quot;session=7f3a9c1e; theme=dark&quot; &#171;done&#187; &copy; 2022";
+
+    public static String byShape(String shape) {
+        switch (shape) {
+            case "SYSLOG":
+                return SYSLOG;
+            case "STACKTRACE":
+                return STACKTRACE;
+            case "JSON":
+                return JSON;
+            case "HTML_ESCAPED":
+                return HTML_ESCAPED;
+            default:
+                throw new IllegalArgumentException("Unknown log line shape " + shape);
+        }
+    }
+
+    /**
+     * Log lines of all shapes in turn, with a running number appended so that the token sets differ between lines.
+     */
+    public static List<String> mixed(int count) {
+        final String[] shapes = {SYSLOG, STACKTRACE, JSON, HTML_ESCAPED};
+        final List<String> lines = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            lines.add(shapes[i % shapes.length] + " seq=" + i);
+        }
+        return lines;
+    }
+}
@@ -0,0 +1,63 @@
+package com.isgneuro.nifi.tools.benchmarks;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.isgneuro.nifi.tools.bloom.StringSegmenter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StringSegmenterBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class LineState {
+        @Param({"SYSLOG", "STACKTRACE", "JSON", "HTML_ESCAPED"})
+        public String shape;
+
+        public String line;
+        public StringSegmenter segmenter;
+
+        @Setup
+        public void setUp() {
+            line = LogSamples.byShape(shape);
+            segmenter = new StringSegmenter();
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class JsonState {
+        public String json;
+        public StringSegmenter segmenter;
+
+        @Setup
+        public void setUp() {
+            json = LogSamples.JSON;
+            segmenter = new StringSegmenter();
+        }
+    }
+
+    @Benchmark
+    public Set<String> parseString(LineState state) {
+        return state.segmenter.parseString(state.line);
+    }
+
+    @Benchmark
+    public Set<String> parseJSON(JsonState state) throws JsonProcessingException {
+        return state.segmenter.parseJSON(state.json);
+    }
+}
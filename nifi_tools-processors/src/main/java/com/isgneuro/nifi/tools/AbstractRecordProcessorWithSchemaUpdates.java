@@ -24,6 +24,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -127,23 +128,25 @@ public abstract class AbstractRecordProcessorWithSchemaUpdates extends AbstractP
                             return;
                         }
 
-                        firstRecord = AbstractRecordProcessorWithSchemaUpdates.this.process(firstRecord, original, context);
                         final List<Record> rl=new ArrayList<>();
-                        rl.add(firstRecord);
-                        RecordSchema lastSchema=firstRecord.getSchema();
+                        RecordSchema lastSchema=null;
 
-                            Record record;
+                            Record record=firstRecord;
                             getLogger().debug("Starting record loop...");
-                            while ((record = reader.nextRecord()) != null) {
-                                record.incorporateSchema(lastSchema);
-                                final Record processed = AbstractRecordProcessorWithSchemaUpdates.this.process(record, original, context);
-                                lastSchema=processed.getSchema();
-                                rl.add(processed);
+                            do {
+                                if (lastSchema!=null) record.incorporateSchema(lastSchema);
+                                final List<Record> processed = processAll(record, original, context);
+                                for (Record r:processed){
+                                    // records made of the same input record do not have the fields of each other
+                                    if (lastSchema!=null && processed.size()>1) r.incorporateSchema(lastSchema);
+                                    lastSchema=r.getSchema();
+                                    rl.add(r);
+                                }
                                 if((rl.size()%1000)==0)getLogger().debug("Records processed: {}",new Object[]{rl.size()});
-                            }
+                            } while ((record = reader.nextRecord()) != null);
                             getLogger().debug("All {} records are done",new Object[]{rl.size()});
 
-                            final RecordSchema writeSchema=writerFactory.getSchema(originalAttributes, rl.get(rl.size()-1).getSchema());
+                            final RecordSchema writeSchema=writerFactory.getSchema(originalAttributes, getWriteSchema(rl.get(rl.size()-1).getSchema(), context));
                             getLogger().debug("Schema:{}",new Object[]{writeSchema});
                             try(final RecordSetWriter writer = writerFactory.createWriter(getLogger(), writeSchema, out, originalAttributes)){
                             writer.beginRecordSet();
@@ -180,8 +183,30 @@ public abstract class AbstractRecordProcessorWithSchemaUpdates extends AbstractP
 
         final int count = recordCount.get();
         session.adjustCounter("Records Processed", count, false);
+        updateCounters(session);
         getLogger().info("Successfully converted {} records for {}", new Object[] {count, flowFile});
     }
 
     protected abstract Record process(Record record, FlowFile flowFile, ProcessContext context);
+
+    /**
+     * Records written for an input record, the processed record by default. The schema of the records is merged
+     * in order, so the last record written has the fields of all of them.
+     */
+    protected List<Record> processAll(Record record, FlowFile flowFile, ProcessContext context) {
+        return Collections.singletonList(process(record, flowFile, context));
+    }
+
+    /**
+     * Schema passed to the Record Writer. The schema of the last record has the fields of all the records of the FlowFile.
+     */
+    protected RecordSchema getWriteSchema(final RecordSchema schema, final ProcessContext context) {
+        return schema;
+    }
+
+    /**
+     * Called after a FlowFile is transferred to success to add processor specific counters.
+     */
+    protected void updateCounters(final ProcessSession session) {
+    }
 }
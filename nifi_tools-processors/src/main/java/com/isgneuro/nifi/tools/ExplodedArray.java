@@ -0,0 +1,90 @@
+package com.isgneuro.nifi.tools;
+
+import org.apache.nifi.serialization.SimpleRecordSchema;
+import org.apache.nifi.serialization.record.Record;
+import org.apache.nifi.serialization.record.RecordField;
+import org.apache.nifi.serialization.record.RecordFieldType;
+import org.apache.nifi.serialization.record.RecordSchema;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Values of the elements of one parsed array, written as separate records instead of indexed fields.
+ *
+ * The array is given by its flattened field name, e.g. items or request.items. A key items[3].id is a value of element 3
+ * and is written as items.id in the record of that element, a scalar element items[3] as items.
+ * Each element record carries all the other fields of the parsed record and the fields of the elements before it,
+ * so the schema width is governed over all the elements.
+ */
+final class ExplodedArray {
+    private final String array;
+    private final String prefix;
+    private final Map<Integer, Element> elements = new LinkedHashMap<>();
+
+    /**
+     * Fields and values of one element by their keys.
+     */
+    private static final class Element {
+        final Map<String, RecordField> fields = new LinkedHashMap<>();
+        final Map<String, Object> values = new HashMap<>();
+    }
+
+    ExplodedArray(String array) {
+        this.array = array;
+        this.prefix = array + "[";
+    }
+
+    /**
+     * @return false if the key is not a value of an element of the array
+     */
+    boolean add(String key, Object value, FieldNameCache.Naming naming, RecordFieldType type, FieldNameCache.Stats stats) {
+        if (!key.startsWith(prefix)) {
+            return false;
+        }
+        final int close = key.indexOf(']', prefix.length());
+        if (close < 0) {
+            return false;
+        }
+        final int index;
+        try {
+            index = Integer.parseInt(key.substring(prefix.length(), close));
+        } catch (NumberFormatException e) {
+            return false;
+        }
+        final String elementKey = array + key.substring(close + 1);
+        final Element element = elements.computeIfAbsent(index, k -> new Element());
+        element.fields.put(elementKey, FieldNameCache.field(elementKey, naming, type, stats));
+        element.values.put(elementKey, value);
+        return true;
+    }
+
+    /**
+     * @param governor limits the fields the elements add to the schema as for the fields of the parent
+     * @return a record per element with the fields of the parent, the parent itself if the array had no elements
+     */
+    List<Record> records(Record parent, SchemaWidthGovernor governor) {
+        if (elements.isEmpty()) {
+            return Collections.singletonList(parent);
+        }
+        final List<Record> records = new ArrayList<>(elements.size());
+        RecordSchema schema = parent.getSchema();
+        for (Element element : elements.values()) {
+            final Map<String, Object> values = new HashMap<>(LazyJsonRecord.valuesOf(parent));
+            // the extra map is filled per element
+            values.computeIfPresent(SchemaWidthGovernor.EXTRA_FIELD_NAME, (k, v) -> v instanceof Map ? new LinkedHashMap<>((Map<?, ?>) v) : v);
+            // lazy values of the elements are decoded by the record
+            final Record child = new LazyJsonRecord(schema, values);
+            final List<RecordField> newfields = new ArrayList<>(element.fields.size());
+            element.fields.forEach((key, field) -> governor.setValue(child, newfields, key, field, element.values.get(key)));
+            child.incorporateSchema(new SimpleRecordSchema(newfields));
+            schema = child.getSchema();
+            records.add(child);
+        }
+        return records;
+    }
+}
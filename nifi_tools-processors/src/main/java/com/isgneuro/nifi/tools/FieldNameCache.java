@@ -0,0 +1,157 @@
+package com.isgneuro.nifi.tools;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.apache.nifi.processor.ProcessSession;
+import org.apache.nifi.serialization.record.RecordField;
+import org.apache.nifi.serialization.record.RecordFieldType;
+
+import javax.xml.bind.DatatypeConverter;
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+/**
+ * Record fields of parsed keys shared by the parse processors. A key is turned into the final field name
+ * (Splunk style rewrite of JsonFlattener names, hex encoding with the parent field prefix, Utils.FIELD_PREFIX)
+ * only the first time it is seen with the same naming options, the RecordField is reused afterwards.
+ */
+final class FieldNameCache {
+    static final long MAX_SIZE = 100000;
+
+    private static final Pattern SPLUNK_PAR = Pattern.compile("\\[\\\\\"([^\\[\\]]+?)\\\\\"\\]");
+    private static final Cache<NameKey, RecordField> CACHE = CacheBuilder.newBuilder()
+            .maximumSize(MAX_SIZE)
+            .recordStats()
+            .build();
+
+    private FieldNameCache() {
+    }
+
+    /**
+     * Options changing the field name of a key.
+     */
+    static final class Naming {
+        static final Naming PLAIN = new Naming("", false, false);
+
+        private final String prefix;
+        private final boolean encodeKeys;
+        private final boolean splunkRewrite;
+
+        /**
+         * @param prefix        prefix of encoded keys, not used without encoding
+         * @param encodeKeys    encode the prefixed key as hex
+         * @param splunkRewrite rewrite [\"name\"] of JsonFlattener keys to .name
+         */
+        Naming(String prefix, boolean encodeKeys, boolean splunkRewrite) {
+            this.prefix = encodeKeys ? prefix : "";
+            this.encodeKeys = encodeKeys;
+            this.splunkRewrite = splunkRewrite;
+        }
+
+        String name(String key) {
+            if (splunkRewrite) {
+                final boolean startbr = key.startsWith("[\\\"");
+                key = SPLUNK_PAR.matcher(key).replaceAll(".$1");
+                if (startbr) {
+                    key = key.substring(1);
+                }
+            }
+            if (encodeKeys) {
+                key = DatatypeConverter.printHexBinary((prefix + key).getBytes());
+            }
+            return Utils.FIELD_PREFIX + key;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Naming)) return false;
+            final Naming other = (Naming) o;
+            return encodeKeys == other.encodeKeys && splunkRewrite == other.splunkRewrite && prefix.equals(other.prefix);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(prefix, encodeKeys, splunkRewrite);
+        }
+    }
+
+    /**
+     * Lookups of one processor, reported as counters of the processor.
+     */
+    static final class Stats {
+        /**
+         * Lookups which are not counted, e.g. of a controller service.
+         */
+        static final Stats NONE = new Stats();
+
+        private final LongAdder hits = new LongAdder();
+        private final LongAdder misses = new LongAdder();
+
+        void report(ProcessSession session) {
+            final long h = hits.sumThenReset();
+            final long m = misses.sumThenReset();
+            if (h > 0) session.adjustCounter("Field name cache hits", h, false);
+            if (m > 0) session.adjustCounter("Field name cache misses", m, false);
+        }
+    }
+
+    /**
+     * @return STRING nullable field for the key
+     */
+    static RecordField field(String key, Naming naming, Stats stats) {
+        return field(key, naming, RecordFieldType.STRING, stats);
+    }
+
+    /**
+     * @param type type of the value, null for a null value
+     * @return nullable field of the type for the key
+     */
+    static RecordField field(String key, Naming naming, RecordFieldType type, Stats stats) {
+        final NameKey nameKey = new NameKey(key, naming, type);
+        RecordField field = CACHE.getIfPresent(nameKey);
+        if (field != null) {
+            if (stats != Stats.NONE) stats.hits.increment();
+            return field;
+        }
+        if (stats != Stats.NONE) stats.misses.increment();
+        field = new RecordField(naming.name(key), type == null ? Utils.NULL_VALUE_TYPE : type.getDataType(), true);
+        CACHE.put(nameKey, field);
+        return field;
+    }
+
+    /**
+     * @return hit rate of all the processors since the start
+     */
+    static double hitRate() {
+        return CACHE.stats().hitRate();
+    }
+
+    private static final class NameKey {
+        private final String key;
+        private final Naming naming;
+        private final RecordFieldType type;
+        private final int hash;
+
+        NameKey(String key, Naming naming, RecordFieldType type) {
+            this.key = key;
+            this.naming = naming;
+            this.type = type;
+            this.hash = 31 * (31 * key.hashCode() + naming.hashCode()) + (type == null ? -1 : type.ordinal());
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof NameKey)) return false;
+            final NameKey other = (NameKey) o;
+            return hash == other.hash && type == other.type && key.equals(other.key) && naming.equals(other.naming);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
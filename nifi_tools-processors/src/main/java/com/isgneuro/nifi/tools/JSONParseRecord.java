@@ -1,5 +1,7 @@
 package com.isgneuro.nifi.tools;
 
+import com.fasterxml.jackson.core.JsonLocation;
+import com.fasterxml.jackson.core.JsonProcessingException;
 import com.github.wnameless.json.flattener.JsonFlattener;
 
 //import org.apache.commons.lang3.StringEscapeUtils;
@@ -18,6 +20,7 @@ import org.apache.nifi.components.ValidationResult;
 import org.apache.nifi.expression.ExpressionLanguageScope;
 import org.apache.nifi.flowfile.FlowFile;
 import org.apache.nifi.processor.ProcessContext;
+import org.apache.nifi.processor.ProcessSession;
 import org.apache.nifi.record.path.FieldValue;
 import org.apache.nifi.record.path.RecordPath;
 import org.apache.nifi.record.path.RecordPathResult;
@@ -27,11 +30,16 @@ import org.apache.nifi.serialization.SimpleRecordSchema;
 import org.apache.nifi.serialization.record.Record;
 import org.apache.nifi.serialization.record.RecordField;
 import org.apache.nifi.serialization.record.RecordFieldType;
+import org.apache.nifi.serialization.record.RecordSchema;
 import org.apache.nifi.processor.util.StandardValidators;
-import javax.xml.bind.DatatypeConverter;
+import javax.json.stream.JsonParsingException;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.regex.Pattern;
@@ -51,15 +59,17 @@ import java.util.stream.Collectors;
 public class JSONParseRecord extends AbstractRecordProcessorWithSchemaUpdates {
 
 	private final Pattern kvpat = Pattern.compile("(?ms)^[^\\{]*(?<json>\\{.+\\})[^\\}]*$");
-	private Pattern mjson_pat = null;
-	private Pattern jsonsep_pat = null;
-	private final Pattern new_line = Pattern.compile("\n");
-	private final Pattern tab = Pattern.compile("\t");
-	private final Pattern SplunkPar = Pattern.compile("\\[\\\\\"([^\\[\\]]+?)\\\\\"\\]");
-	private final Pattern SplunkParL = Pattern.compile("\\[\\\\\"");
-	private final Pattern SplunkParR = Pattern.compile("\\\\\"\\]");
+	private MultiJsonSplitter splitter = null;
 	private int maxdepth = -1;
-
+	private JsonPathTrie.Node includePaths = null;
+	private boolean typedValues = false;
+	private String explodePath = null;
+	private SchemaWidthGovernor governor = SchemaWidthGovernor.NONE;
+	private boolean structuralScanner = false;
+	private boolean lazyValues = false;
+	private ParseResultCache parseCache = null;
+
+    private final FieldNameCache.Stats nameCacheStats = new FieldNameCache.Stats();
     private volatile RecordPathCache recordPathCache;
     private volatile List<String> recordPaths;
 
@@ -161,6 +171,108 @@ public class JSONParseRecord extends AbstractRecordProcessorWithSchemaUpdates {
             .required(true)
             .build();
 
+    static final AllowableValue STREAMING_SET = new AllowableValue("true","true",
+            "Flatten JSON while parsing it");
+    static final AllowableValue STREAMING_UNSET = new AllowableValue("false","false",
+            "Flatten JSON with JsonFlattener (default)");
+
+    static final PropertyDescriptor STREAMING_FLATTEN = new PropertyDescriptor.Builder()
+            .name("streaming_flatten")
+            .displayName("Streaming flattener")
+            .description("Produce field names while parsing JSON, members deeper than the maximum depth are skipped without parsing. "
+                    + "Field names are the same as with JsonFlattener. Required by include paths and the structural scanner")
+            .expressionLanguageSupported(ExpressionLanguageScope.NONE)
+            .allowableValues(STREAMING_SET,STREAMING_UNSET)
+            .defaultValue(STREAMING_UNSET.getValue())
+            .required(true)
+            .build();
+
+    static final PropertyDescriptor INCLUDE_PATHS = new PropertyDescriptor.Builder()
+            .name("include_paths")
+            .displayName("Include paths")
+            .description("Comma separated JSON paths to extract, e.g. request.headers.host, items[*].id. "
+                    + "* matches any member, [*] any array element, a path extracts everything below it. "
+                    + "Other values are skipped while parsing. Empty to extract all values")
+            .expressionLanguageSupported(ExpressionLanguageScope.NONE)
+            .addValidator(JsonPathTrie.VALIDATOR)
+            .required(false)
+            .build();
+
+    static final AllowableValue TYPED_VALUES_SET = new AllowableValue("true","true",
+            "Numbers as long or double fields, booleans as boolean fields");
+    static final AllowableValue TYPED_VALUES_UNSET = new AllowableValue("false","false",
+            "All values as string fields");
+
+    static final PropertyDescriptor TYPED_VALUES = new PropertyDescriptor.Builder()
+            .name("typed_values")
+            .displayName("Typed values")
+            .description("Write JSON numbers and booleans as long, double and boolean fields instead of strings. "
+                    + "Integers not fitting a long are written as strings")
+            .expressionLanguageSupported(ExpressionLanguageScope.NONE)
+            .allowableValues(TYPED_VALUES_SET,TYPED_VALUES_UNSET)
+            .defaultValue(TYPED_VALUES_UNSET.getValue())
+            .required(true)
+            .build();
+
+    static final AllowableValue TYPE_CONFLICT_STRING = new AllowableValue("string","string",
+            "A field having values of different types in a flowfile is written as string");
+    static final AllowableValue TYPE_CONFLICT_CHOICE = new AllowableValue("choice","choice",
+            "A field having values of different types in a flowfile is written as choice of the types");
+
+    static final PropertyDescriptor TYPE_CONFLICT = new PropertyDescriptor.Builder()
+            .name("type_conflict")
+            .displayName("Type conflict")
+            .description("Type of a field having values of different types in one flowfile, used with typed values")
+            .expressionLanguageSupported(ExpressionLanguageScope.NONE)
+            .allowableValues(TYPE_CONFLICT_STRING,TYPE_CONFLICT_CHOICE)
+            .defaultValue(TYPE_CONFLICT_STRING.getValue())
+            .required(true)
+            .build();
+
+    static final AllowableValue SCANNER_PARSER = new AllowableValue("parser","parser",
+            "Parse JSON char by char with the streaming parser");
+    static final AllowableValue SCANNER_STRUCTURAL = new AllowableValue("structural","structural",
+            "Index the structural characters of JSON with 64-bit word operations, then parse walking the index only");
+
+    static final PropertyDescriptor JSON_SCANNER = new PropertyDescriptor.Builder()
+            .name("json_scanner")
+            .displayName("JSON scanner")
+            .description("Scanner of JSON text. The structural scanner finds strings and brackets in blocks of 64 chars "
+                    + "and skips containers by its index, it is faster for large JSON")
+            .expressionLanguageSupported(ExpressionLanguageScope.NONE)
+            .allowableValues(SCANNER_PARSER,SCANNER_STRUCTURAL)
+            .defaultValue(SCANNER_PARSER.getValue())
+            .required(true)
+            .build();
+
+    static final AllowableValue LAZY_VALUES_SET = new AllowableValue("true","true",
+            "Decode strings and numbers when the written fields are read");
+    static final AllowableValue LAZY_VALUES_UNSET = new AllowableValue("false","false",
+            "Decode all values while parsing");
+
+    static final PropertyDescriptor LAZY_VALUES = new PropertyDescriptor.Builder()
+            .name("lazy_values")
+            .displayName("Lazy values")
+            .description("Keep strings and numbers as positions in the JSON text and decode them only when the value "
+                    + "of the field is read, e.g. by the Record Writer. Fields are still flattened and typed while parsing, "
+                    + "so only the decoding cost is saved. Requires the structural JSON scanner")
+            .expressionLanguageSupported(ExpressionLanguageScope.NONE)
+            .allowableValues(LAZY_VALUES_SET,LAZY_VALUES_UNSET)
+            .defaultValue(LAZY_VALUES_UNSET.getValue())
+            .required(true)
+            .build();
+
+    static final PropertyDescriptor EXPLODE_PATH = new PropertyDescriptor.Builder()
+            .name("explode_path")
+            .displayName("Explode array path")
+            .description("Flattened field name of an array, e.g. items or request.items, without the prefix. "
+                    + "Each element of the array is written as a separate record with the other fields of the record, "
+                    + "element fields are named without the index, e.g. items.id. Empty to flatten arrays into indexed fields")
+            .expressionLanguageSupported(ExpressionLanguageScope.NONE)
+            .addValidator(StandardValidators.NON_EMPTY_VALIDATOR)
+            .required(false)
+            .build();
+
     @Override
     protected List<PropertyDescriptor> getSupportedPropertyDescriptors() {
         final List<PropertyDescriptor> properties = new ArrayList<>(super.getSupportedPropertyDescriptors());
@@ -171,6 +283,16 @@ public class JSONParseRecord extends AbstractRecordProcessorWithSchemaUpdates {
         properties.add(SPLUNK_STYLE);
         properties.add(MAXDEPTH);
         properties.add(REMOVE_ILCHAR);
+        properties.add(STREAMING_FLATTEN);
+        properties.add(INCLUDE_PATHS);
+        properties.add(TYPED_VALUES);
+        properties.add(TYPE_CONFLICT);
+        properties.add(EXPLODE_PATH);
+        properties.add(SchemaWidthGovernor.MAX_FIELDS);
+        properties.add(SchemaWidthGovernor.DENIED_KEYS);
+        properties.add(JSON_SCANNER);
+        properties.add(LAZY_VALUES);
+        properties.add(ParseResultCache.PARSE_CACHE_SIZE);
         return properties;
     }
 
@@ -189,16 +311,48 @@ public class JSONParseRecord extends AbstractRecordProcessorWithSchemaUpdates {
     @Override
     protected Collection<ValidationResult> customValidate(final ValidationContext validationContext) {
         final boolean containsDynamic = validationContext.getProperties().keySet().stream().anyMatch(PropertyDescriptor::isDynamic);
-
-        if (containsDynamic) {
-            return Collections.emptyList();
+        final List<ValidationResult> results = new ArrayList<>();
+
+        if (!containsDynamic) {
+            results.add(new ValidationResult.Builder()
+                .subject("User-defined Properties")
+                .valid(false)
+                .explanation("At least one RecordPath must be specified")
+                .build());
         }
-
-        return Collections.singleton(new ValidationResult.Builder()
-            .subject("User-defined Properties")
-            .valid(false)
-            .explanation("At least one RecordPath must be specified")
-            .build());
+        if (validationContext.getProperty(INCLUDE_PATHS).isSet()
+                && validationContext.getProperty(STREAMING_FLATTEN).getValue().equals(STREAMING_UNSET.getValue())) {
+            results.add(new ValidationResult.Builder()
+                .subject(INCLUDE_PATHS.getDisplayName())
+                .valid(false)
+                .explanation("Include paths are supported only by the streaming flattener")
+                .build());
+        }
+        if (validationContext.getProperty(JSON_SCANNER).getValue().equals(SCANNER_STRUCTURAL.getValue())
+                && validationContext.getProperty(STREAMING_FLATTEN).getValue().equals(STREAMING_UNSET.getValue())) {
+            results.add(new ValidationResult.Builder()
+                .subject(JSON_SCANNER.getDisplayName())
+                .valid(false)
+                .explanation("The structural scanner is supported only by the streaming flattener")
+                .build());
+        }
+        if (validationContext.getProperty(LAZY_VALUES).getValue().equals(LAZY_VALUES_SET.getValue())
+                && !validationContext.getProperty(JSON_SCANNER).getValue().equals(SCANNER_STRUCTURAL.getValue())) {
+            results.add(new ValidationResult.Builder()
+                .subject(LAZY_VALUES.getDisplayName())
+                .valid(false)
+                .explanation("Lazy values require the structural JSON scanner")
+                .build());
+        }
+        if (validationContext.getProperty(LAZY_VALUES).getValue().equals(LAZY_VALUES_SET.getValue())
+                && Integer.parseInt(validationContext.getProperty(ParseResultCache.PARSE_CACHE_SIZE).getValue()) > 0) {
+            results.add(new ValidationResult.Builder()
+                .subject(ParseResultCache.PARSE_CACHE_SIZE.getDisplayName())
+                .valid(false)
+                .explanation("The parse cache keeps decoded values and cannot be used with lazy values")
+                .build());
+        }
+        return results;
     }
 
     @OnScheduled
@@ -214,19 +368,46 @@ public class JSONParseRecord extends AbstractRecordProcessorWithSchemaUpdates {
 
         this.recordPaths = recordPaths;
         final String json_sep=context.getProperty(JSONSEP).getValue();
-        this.mjson_pat=Pattern.compile("(?ms)\\{.+"+json_sep+".+\\}");
-        this.jsonsep_pat=Pattern.compile(json_sep);
+        this.splitter=new MultiJsonSplitter(Pattern.compile(json_sep));
+        this.includePaths=context.getProperty(INCLUDE_PATHS).isSet()?JsonPathTrie.compile(context.getProperty(INCLUDE_PATHS).getValue()):null;
         this.maxdepth=Integer.parseInt(context.getProperty(MAXDEPTH).getValue());
+        this.typedValues=context.getProperty(TYPED_VALUES).getValue().equals(TYPED_VALUES_SET.getValue());
+        this.explodePath=context.getProperty(EXPLODE_PATH).isSet()?context.getProperty(EXPLODE_PATH).getValue():null;
+        this.governor=SchemaWidthGovernor.of(context);
+        this.structuralScanner=context.getProperty(JSON_SCANNER).getValue().equals(SCANNER_STRUCTURAL.getValue());
+        this.lazyValues=context.getProperty(LAZY_VALUES).getValue().equals(LAZY_VALUES_SET.getValue());
+        this.parseCache=ParseResultCache.of(context);
+    }
+
+    @Override
+    protected List<Record> processAll(Record record, final FlowFile flowFile, final ProcessContext context) {
+        if (explodePath == null) {
+            return super.processAll(record, flowFile, context);
+        }
+        final ExplodedArray exploded = new ExplodedArray(explodePath);
+        return exploded.records(parse(record, context, exploded), governor);
     }
 
     @Override
     protected Record process(Record record, final FlowFile flowFile, final ProcessContext context) {
+        return parse(record, context, null);
+    }
+
+    /**
+     * @param exploded collects the elements of the exploded array, null if arrays are flattened
+     */
+    private Record parse(Record record, final ProcessContext context, final ExplodedArray exploded) {
+        if (lazyValues) {
+            // lazy values are set without type checks and decoded by the record
+            record = new LazyJsonRecord(record);
+        }
         final boolean set_child_fields_prefix=context.getProperty(PARENT_FIELD_PREFIX).getValue().equals(PARENT_FIELD_PREFIX_SET.getValue());
         final boolean do_encode_keys=context.getProperty(ENCODE_KEYS).getValue().equals(ENCODE_KEYS_SET.getValue());
         final boolean do_multijson=context.getProperty(MULTIJSON).getValue().equals(MULTIJSON_SET.getValue());
         //final String json_sep=context.getProperty(JSONSEP).getValue();
         final boolean splunk_style=context.getProperty(SPLUNK_STYLE).getValue().equals(SPLUNK_SET.getValue());
         final boolean remove_ilchar=context.getProperty(REMOVE_ILCHAR).getValue().equals(ILCHAR_SET.getValue());
+        final boolean streaming=context.getProperty(STREAMING_FLATTEN).getValue().equals(STREAMING_SET.getValue());
 
         final List<RecordField> newfields=new ArrayList<>();
 
@@ -240,6 +421,8 @@ public class JSONParseRecord extends AbstractRecordProcessorWithSchemaUpdates {
             for (FieldValue fieldVal:selectedFields) {
                 //this.getLogger().debug("Field value:{}, name:{}", new Object[]{fieldVal.getValue(), fieldVal.getField().getFieldName()});
                 final String field_prefix=set_child_fields_prefix?fieldVal.getField().getFieldName()+".":"";
+                // the JsonFlattener keys are rewritten to Splunk style by the naming, the streaming flattener writes them so
+                final FieldNameCache.Naming naming=new FieldNameCache.Naming(field_prefix,do_encode_keys,splunk_style && !streaming);
 
                 final String srcval=fieldVal.getValue().toString();
                 //final Matcher kvmat = kvpat.matcher(srcval);
@@ -255,133 +438,36 @@ public class JSONParseRecord extends AbstractRecordProcessorWithSchemaUpdates {
                 //while (kvmat.find()) {
                 if(istart>=0){
                     //String json=kvmat.group("json");
-                    String json=istart==0?srcval:srcval.substring(istart);
-                    //if (json.length()<999000) {// temporary possible incorrect json
-                        //this.getLogger().debug("JSON:{}", new Object[]{json});
-                        if (do_multijson && mjson_pat.matcher(json).matches()) {
-                            json = "[" + jsonsep_pat.matcher(json).replaceAll(",") + "]";
-                        }
-                        if(remove_ilchar) {
-                            //json=json.replaceAll("\n","\\\\n");
-                            json = new_line.matcher(json).replaceAll("\\\\n");
-                            json = tab.matcher(json).replaceAll("    ");
-                        /*String nlj="";
-                        for (int i=0;i<json.length();i++){
-                            char c=json.charAt(i);
-                            if(c=='\n'){
-                                nlj+="\\\\n";
-                            }
-                            else nlj+=c;
-                        }
-                        json=nlj;*/
-                        }
-                        int reccnt=0;
-                        try {
-                            Map<String, Object> flattenJson = JsonFlattener.flattenAsMap(json);
-                            //this.getLogger().debug("Parsed JSON:{}", new Object[]{flattenJson});
-                            this.getLogger().debug("Total keys:{}",new Object[]{flattenJson.size()});
-                            for (Map.Entry<String, Object> jf : flattenJson.entrySet()) {
-                                reccnt++;
-                                String key = jf.getKey();
-                                int depth=0;
-                                int nesteddot=0;
-                                boolean overdepth=false;
-                                if (maxdepth>0){
-                                    for (int i=0;i<key.length();i++){
-                                        if (key.startsWith("\\\"][\\\"",i)){
-                                            i+=5;
-                                            depth++;
-                                        }
-                                        else if(key.startsWith("[\\\"",i)){
-                                            nesteddot++;
-                                            if(i>0)depth++;
-                                        }
-                                        else if(key.startsWith("\\\"]",i)){
-                                            if (nesteddot>0)nesteddot--;
-                                        }
-                                        else if(key.charAt(i)=='.'){
-                                            if (nesteddot==0)depth++;
-                                        }
-
-                                        if(depth>=maxdepth){
-                                            overdepth=true;
-                                            break;
-                                        }
-                                    }
-                                    if (overdepth)continue;
-                                }
-                                if(splunk_style){
-                                    final boolean startbr=key.startsWith("[\\\"");
-                                    key=SplunkPar.matcher(key).replaceAll(".$1");
-                                    //key=SplunkParL.matcher(key).replaceAll(".");
-                                    //key=SplunkParR.matcher(key).replaceAll("");
-                                    if (startbr){
-                                        key=key.substring(1);
-                                    }
-
-                                    /*
-                                    String tmpkey="";
-                                    boolean changed=false;
-                                    for (int i=0;i<key.length();i++){
-                                        if(key.startsWith("[\\\"",i)){
-                                            changed=true;
-                                            if(i>0)tmpkey+='.';
-                                            i+=2;
-                                        }
-                                        else if(key.startsWith("\\\"]",i)){
-                                            changed=true;
-                                            i+=2;
-                                        }
-                                        else {
-                                            tmpkey += key.charAt(i);
-                                        }
-                                    }
-                                    if (changed)key=tmpkey;
-
-                                     */
-                                }
-//                            if (do_encode_keys)key=java.net.URLEncoder.encode(key,"UTF-8");
-                                if (do_encode_keys)
-                                    key = DatatypeConverter.printHexBinary((field_prefix + key).getBytes());
-                                final String value = jf.getValue() == null ? null : jf.getValue().toString();
-                                this.getLogger().debug("Key:{}; Value:{}", key, value);
-                                //if (reccnt<10000) {
-                                    final RecordField keyf = new RecordField(Utils.FIELD_PREFIX + key, RecordFieldType.STRING.getDataType(), true);
-                                    record.setValue(keyf, value);
-                                    newfields.add(keyf);
-                                //}
-                                //break;
-                            }
-                        } catch (com.eclipsesource.json.ParseException e) {
-                            final String mess = e.getLocalizedMessage();
-                            int fpos = e.getLocation().offset;
-                            //this.getLogger().info("Length:{} Pos:{}",new Object[]{json.length(),fpos});
-                            if (fpos >= json.length()) fpos = json.length() - 1;
-                            final int spos = fpos < 10 ? 0 : fpos - 10;
-                            final int epos = fpos > (json.length() - 10) ? json.length() : fpos + 10;
-                            final int eposs = fpos < (json.length() - 1) ? fpos + 1 : fpos;
-                            final char fchar = json.charAt(fpos);
-                            final String fstr = json.substring(spos, fpos) + "<" + fchar + ">" + json.substring(eposs, epos);
-                            final RecordField keyf = new RecordField("_JSON_parsing_error", RecordFieldType.STRING.getDataType(), true);
-                            record.setValue(keyf, mess + " " + fstr);
-                            newfields.add(keyf);
-                            if (fpos>=(json.length() - 1)){
-                                this.getLogger().debug("Object:"+json);
-                                this.getLogger().info("Error at:{}", fstr);
-                                this.getLogger().error("Parsing error:",e);
+                    // identical texts are flattened once, the naming is applied to the cached keys
+                    final List<Map.Entry<String, Object>> cached=parseCache!=null?parseCache.get(srcval,istart,srcval.length()):null;
+                    if (cached!=null) {
+                        addFields(record, newfields, cached, naming, exploded);
+                    }
+                    else {
+                        // separators of multiple JSONs are read as commas of an array
+                        // and control characters in strings are escaped by the reader
+                        final int[] separators=do_multijson?splitter.split(srcval,istart):JsonCharSequenceReader.NO_SEPARATORS;
+                        final Map<String, Object> flattenJson;
+                        //if (json.length()<999000) {// temporary possible incorrect json
+                            if (streaming && structuralScanner) {
+                                // the scanner reads the field value itself
+                                flattenJson=flattenStructural(record, newfields, srcval, istart, separators, remove_ilchar, splunk_style);
                             }
                             else {
-                                this.getLogger().debug("Object:"+json);
-                                this.getLogger().error("Error at:{} Parsing error:", fstr, e);
+                                final JsonCharSequenceReader reader=new JsonCharSequenceReader(srcval,istart,srcval.length(),separators,remove_ilchar);
+                                flattenJson=streaming
+                                        ? flattenStreaming(record, newfields, reader, srcval, istart - (separators.length > 0 ? 1 : 0), splunk_style)
+                                        : flattenWhole(record, newfields, readall(reader));
                             }
+                        //}
+                        //else {
+                        //    this.getLogger().info("Huge json received {} chars",new Object[json.length()]);
+                        //}
+                        if (flattenJson!=null) {
+                            if (parseCache!=null) parseCache.put(srcval,istart,srcval.length(),flattenJson.entrySet());
+                            addFields(record, newfields, flattenJson.entrySet(), naming, exploded);
                         }
-                    /*catch (java.io.UnsupportedEncodingException e){
-                        this.getLogger().error("Unsupported Encoding:{} Parsing error:",new Object[]{json},e);
-                    }*/
-                    //}
-                    //else {
-                    //    this.getLogger().info("Huge json received {} chars",new Object[json.length()]);
-                    //}
+                    }
                 }
             }
         }
@@ -396,4 +482,184 @@ public class JSONParseRecord extends AbstractRecordProcessorWithSchemaUpdates {
         return record;
     }
 
+    /**
+     * @return flattened keys and values of the JSON, null if a parsing error field has been added instead
+     */
+    private Map<String, Object> flattenWhole(Record record, List<RecordField> newfields, String json) {
+        //this.getLogger().debug("JSON:{}", new Object[]{json});
+        final Map<String, Object> flattened = new LinkedHashMap<>();
+        try {
+            Map<String, Object> flattenJson = JsonFlattener.flattenAsMap(json);
+            //this.getLogger().debug("Parsed JSON:{}", new Object[]{flattenJson});
+            for (Map.Entry<String, Object> jf : flattenJson.entrySet()) {
+                String key = jf.getKey();
+                int depth=0;
+                int nesteddot=0;
+                boolean overdepth=false;
+                if (maxdepth>0){
+                    for (int i=0;i<key.length();i++){
+                        if (key.startsWith("\\\"][\\\"",i)){
+                            i+=5;
+                            depth++;
+                        }
+                        else if(key.startsWith("[\\\"",i)){
+                            nesteddot++;
+                            if(i>0)depth++;
+                        }
+                        else if(key.startsWith("\\\"]",i)){
+                            if (nesteddot>0)nesteddot--;
+                        }
+                        else if(key.charAt(i)=='.'){
+                            if (nesteddot==0)depth++;
+                        }
+
+                        if(depth>=maxdepth){
+                            overdepth=true;
+                            break;
+                        }
+                    }
+                    if (overdepth)continue;
+                }
+                // Splunk style and encoding are applied by FieldNameCache once per key
+                final Object value = typedValues ? typedValue(jf.getValue()) : jf.getValue() == null ? null : jf.getValue().toString();
+                flattened.put(key, value);
+            }
+        } catch (com.eclipsesource.json.ParseException e) {
+            addParsingError(record, newfields, json, e.getLocalizedMessage(), e.getLocation().offset, e);
+            return null;
+        }
+        return flattened;
+    }
+
+    /**
+     * @param offset position in src of the first char read from the reader, used to show the place of a parsing error
+     */
+    private Map<String, Object> flattenStreaming(Record record, List<RecordField> newfields, Reader reader, String src, int offset,
+                                                 boolean splunk_style) {
+        // keeps the last value of duplicate keys at the place of the first one, as the JsonFlattener map does
+        final Map<String, Object> flattenJson = new LinkedHashMap<>();
+        try {
+            new JsonStreamFlattener(splunk_style, maxdepth, includePaths, typedValues).flatten(reader, flattenJson::put);
+        } catch (IOException e) {
+            final JsonLocation location = e instanceof JsonProcessingException ? ((JsonProcessingException) e).getLocation() : null;
+            final String mess = e instanceof JsonProcessingException ? ((JsonProcessingException) e).getOriginalMessage() : e.getLocalizedMessage();
+            // approximate, the reader may expand escaped characters
+            addParsingError(record, newfields, src, mess, location == null ? src.length() : offset + (int) location.getCharOffset(), e);
+            return null;
+        }
+        return flattenJson;
+    }
+
+    private Map<String, Object> flattenStructural(Record record, List<RecordField> newfields, String src, int start, int[] separators,
+                                                  boolean remove_ilchar, boolean splunk_style) {
+        final Map<String, Object> flattenJson = new LinkedHashMap<>();
+        try {
+            final JsonStreamFlattener flattener = new JsonStreamFlattener(splunk_style, maxdepth, includePaths, typedValues);
+            final StructuralJsonScanner scanner = new StructuralJsonScanner(src, start, src.length(), separators, remove_ilchar);
+            if (lazyValues) {
+                flattener.flattenLazy(scanner, flattenJson::put);
+            } else {
+                flattener.flatten(scanner, flattenJson::put);
+            }
+        } catch (JsonParsingException e) {
+            addParsingError(record, newfields, src, e.getMessage(), (int) e.getLocation().getStreamOffset(), e);
+            return null;
+        }
+        return flattenJson;
+    }
+
+    private void addFields(Record record, List<RecordField> newfields, Collection<Map.Entry<String, Object>> flattenJson,
+                           FieldNameCache.Naming naming, ExplodedArray exploded) {
+        this.getLogger().debug("Total keys:{}",new Object[]{flattenJson.size()});
+        for (Map.Entry<String, Object> jf : flattenJson) {
+            addField(record, newfields, jf.getKey(), jf.getValue(), naming, exploded);
+        }
+    }
+
+    private void addField(Record record, List<RecordField> newfields, String key, Object value, FieldNameCache.Naming naming,
+                          ExplodedArray exploded) {
+        final RecordFieldType type = Utils.fieldTypeOf(value);
+        if (exploded != null && exploded.add(key, value, naming, type, nameCacheStats)) {
+            return;
+        }
+        final RecordField keyf = FieldNameCache.field(key, naming, type, nameCacheStats);
+        this.getLogger().debug("Key:{}; Value:{}", keyf.getFieldName(), value);
+        governor.setValue(record, newfields, key, keyf, value);
+    }
+
+    /**
+     * @return Long, Double or Boolean for a JsonFlattener number or boolean, the string form of other values
+     */
+    private static Object typedValue(Object value) {
+        if (value instanceof BigDecimal) {
+            final BigDecimal number = (BigDecimal) value;
+            if (number.scale() <= 0) {
+                try {
+                    return number.longValueExact();
+                } catch (ArithmeticException e) {
+                    return number.toString();
+                }
+            }
+            return number.doubleValue();
+        }
+        if (value instanceof Boolean || value == null) {
+            return value;
+        }
+        return value.toString();
+    }
+
+    @Override
+    protected RecordSchema getWriteSchema(final RecordSchema schema, final ProcessContext context) {
+        final RecordSchema typed = Utils.withoutNullTypes(schema);
+        if (context.getProperty(TYPE_CONFLICT).getValue().equals(TYPE_CONFLICT_STRING.getValue())) {
+            return Utils.widenChoicesToString(typed);
+        }
+        return typed;
+    }
+
+    @Override
+    protected void updateCounters(final ProcessSession session) {
+        nameCacheStats.report(session);
+        governor.report(session);
+        if (parseCache != null) parseCache.report(session);
+        this.getLogger().debug("Field name cache hit rate:{}", FieldNameCache.hitRate());
+    }
+
+    private static String readall(Reader reader) {
+        final StringBuilder sb = new StringBuilder(1024);
+        final char[] buf = new char[8192];
+        int n;
+        try {
+            while ((n = reader.read(buf, 0, buf.length)) > 0) {
+                sb.append(buf, 0, n);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return sb.toString();
+    }
+
+    private void addParsingError(Record record, List<RecordField> newfields, String json, String mess, int fpos, Exception e) {
+        //this.getLogger().info("Length:{} Pos:{}",new Object[]{json.length(),fpos});
+        if (fpos >= json.length()) fpos = json.length() - 1;
+        if (fpos < 0) fpos = 0;
+        final int spos = fpos < 10 ? 0 : fpos - 10;
+        final int epos = fpos > (json.length() - 10) ? json.length() : fpos + 10;
+        final int eposs = fpos < (json.length() - 1) ? fpos + 1 : fpos;
+        final char fchar = json.charAt(fpos);
+        final String fstr = json.substring(spos, fpos) + "<" + fchar + ">" + json.substring(eposs, epos);
+        final RecordField keyf = new RecordField("_JSON_parsing_error", RecordFieldType.STRING.getDataType(), true);
+        record.setValue(keyf, mess + " " + fstr);
+        newfields.add(keyf);
+        if (fpos>=(json.length() - 1)){
+            this.getLogger().debug("Object:"+json);
+            this.getLogger().info("Error at:{}", fstr);
+            this.getLogger().error("Parsing error:",e);
+        }
+        else {
+            this.getLogger().debug("Object:"+json);
+            this.getLogger().error("Error at:{} Parsing error:", fstr, e);
+        }
+    }
+
 }
@@ -16,6 +16,7 @@ import org.apache.nifi.components.ValidationResult;
 import org.apache.nifi.expression.ExpressionLanguageScope;
 import org.apache.nifi.flowfile.FlowFile;
 import org.apache.nifi.processor.ProcessContext;
+import org.apache.nifi.processor.ProcessSession;
 import org.apache.nifi.record.path.FieldValue;
 import org.apache.nifi.record.path.RecordPath;
 import org.apache.nifi.record.path.RecordPathResult;
@@ -25,10 +26,9 @@ import org.apache.nifi.serialization.SimpleRecordSchema;
 import org.apache.nifi.serialization.record.Record;
 import org.apache.nifi.serialization.record.RecordField;
 import org.apache.nifi.serialization.record.RecordFieldType;
+import org.apache.nifi.serialization.record.RecordSchema;
 import org.apache.nifi.processor.util.StandardValidators;
-import java.io.StringReader;
 import java.util.*;
-import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 import javax.json.Json;
@@ -49,19 +49,25 @@ public class JSONSParseRecord extends AbstractRecordProcessorWithSchemaUpdates {
 
 
 	private final Pattern kvpat = Pattern.compile("(?ms)^[^\\{\\[]*(?<json>[\\{\\[].+)$");
-	private Pattern mjson_pat = null;
-	private Pattern jsonsep_pat = null;
-	private final Pattern new_line = Pattern.compile("\n");
-	private final Pattern tab = Pattern.compile("\t");
+	private MultiJsonSplitter splitter = null;
 	// private final Pattern SplunkPar=Pattern.compile("\\[\\\\\"([^\\[\\]]+?)\\\\\"\\]");
 	private int maxdepth = -1;
+	private JsonPathTrie.Node includePaths = null;
 	private boolean remove_ilchar = true;
 	private boolean splunk_style = false;
 	private boolean set_child_fields_prefix = false;
 	private boolean do_encode_keys = false;
 	private boolean do_multijson = true;
 	private boolean overdepthastext = true;
-
+	private boolean typedValues = false;
+	private String explodePath = null;
+	private SchemaWidthGovernor governor = SchemaWidthGovernor.NONE;
+	private boolean structuralScanner = false;
+	private boolean lazyValues = false;
+	private ParseResultCache parseCache = null;
+	private JsonEventFlattener flattener = null;
+
+    private final FieldNameCache.Stats nameCacheStats = new FieldNameCache.Stats();
     private volatile RecordPathCache recordPathCache;
     private volatile List<String> recordPaths;
 
@@ -189,6 +195,15 @@ public class JSONSParseRecord extends AbstractRecordProcessorWithSchemaUpdates {
         properties.add(MAXDEPTH);
         properties.add(REMOVE_ILCHAR);
         properties.add(OVERDEPTHASTEXT);
+        properties.add(JSONParseRecord.INCLUDE_PATHS);
+        properties.add(JSONParseRecord.TYPED_VALUES);
+        properties.add(JSONParseRecord.TYPE_CONFLICT);
+        properties.add(JSONParseRecord.EXPLODE_PATH);
+        properties.add(SchemaWidthGovernor.MAX_FIELDS);
+        properties.add(SchemaWidthGovernor.DENIED_KEYS);
+        properties.add(JSONParseRecord.JSON_SCANNER);
+        properties.add(JSONParseRecord.LAZY_VALUES);
+        properties.add(ParseResultCache.PARSE_CACHE_SIZE);
         return properties;
     }
 
@@ -207,16 +222,32 @@ public class JSONSParseRecord extends AbstractRecordProcessorWithSchemaUpdates {
     @Override
     protected Collection<ValidationResult> customValidate(final ValidationContext validationContext) {
         final boolean containsDynamic = validationContext.getProperties().keySet().stream().anyMatch(PropertyDescriptor::isDynamic);
-
-        if (containsDynamic) {
-            return Collections.emptyList();
+        final List<ValidationResult> results = new ArrayList<>();
+
+        if (!containsDynamic) {
+            results.add(new ValidationResult.Builder()
+                .subject("User-defined Properties")
+                .valid(false)
+                .explanation("At least one RecordPath must be specified")
+                .build());
         }
-
-        return Collections.singleton(new ValidationResult.Builder()
-            .subject("User-defined Properties")
-            .valid(false)
-            .explanation("At least one RecordPath must be specified")
-            .build());
+        if (validationContext.getProperty(JSONParseRecord.LAZY_VALUES).getValue().equals(JSONParseRecord.LAZY_VALUES_SET.getValue())
+                && !validationContext.getProperty(JSONParseRecord.JSON_SCANNER).getValue().equals(JSONParseRecord.SCANNER_STRUCTURAL.getValue())) {
+            results.add(new ValidationResult.Builder()
+                .subject(JSONParseRecord.LAZY_VALUES.getDisplayName())
+                .valid(false)
+                .explanation("Lazy values require the structural JSON scanner")
+                .build());
+        }
+        if (validationContext.getProperty(JSONParseRecord.LAZY_VALUES).getValue().equals(JSONParseRecord.LAZY_VALUES_SET.getValue())
+                && Integer.parseInt(validationContext.getProperty(ParseResultCache.PARSE_CACHE_SIZE).getValue()) > 0) {
+            results.add(new ValidationResult.Builder()
+                .subject(ParseResultCache.PARSE_CACHE_SIZE.getDisplayName())
+                .valid(false)
+                .explanation("The parse cache keeps decoded values and cannot be used with lazy values")
+                .build());
+        }
+        return results;
     }
 
     @OnScheduled
@@ -232,8 +263,8 @@ public class JSONSParseRecord extends AbstractRecordProcessorWithSchemaUpdates {
 
         this.recordPaths = recordPaths;
         final String json_sep=context.getProperty(JSONSEP).getValue();
-        this.mjson_pat=Pattern.compile("(?ms)\\{.+"+json_sep+".+\\}");
-        this.jsonsep_pat=Pattern.compile(json_sep);
+        this.splitter=new MultiJsonSplitter(Pattern.compile(json_sep));
+        this.includePaths=context.getProperty(JSONParseRecord.INCLUDE_PATHS).isSet()?JsonPathTrie.compile(context.getProperty(JSONParseRecord.INCLUDE_PATHS).getValue()):null;
         this.maxdepth=Integer.parseInt(context.getProperty(MAXDEPTH).getValue());
         this.remove_ilchar=context.getProperty(REMOVE_ILCHAR).getValue().equals(ILCHAR_SET.getValue());
         this.splunk_style=context.getProperty(SPLUNK_STYLE).getValue().equals(SPLUNK_SET.getValue());
@@ -241,10 +272,35 @@ public class JSONSParseRecord extends AbstractRecordProcessorWithSchemaUpdates {
         this.do_encode_keys=context.getProperty(ENCODE_KEYS).getValue().equals(ENCODE_KEYS_SET.getValue());
         this.do_multijson=context.getProperty(MULTIJSON).getValue().equals(MULTIJSON_SET.getValue());
         this.overdepthastext=context.getProperty(OVERDEPTHASTEXT).getValue().equals(OVERDEPTHASTEXT_SET.getValue());
+        this.typedValues=context.getProperty(JSONParseRecord.TYPED_VALUES).getValue().equals(JSONParseRecord.TYPED_VALUES_SET.getValue());
+        this.explodePath=context.getProperty(JSONParseRecord.EXPLODE_PATH).isSet()?context.getProperty(JSONParseRecord.EXPLODE_PATH).getValue():null;
+        this.governor=SchemaWidthGovernor.of(context);
+        this.structuralScanner=context.getProperty(JSONParseRecord.JSON_SCANNER).getValue().equals(JSONParseRecord.SCANNER_STRUCTURAL.getValue());
+        this.lazyValues=structuralScanner && context.getProperty(JSONParseRecord.LAZY_VALUES).getValue().equals(JSONParseRecord.LAZY_VALUES_SET.getValue());
+        this.parseCache=ParseResultCache.of(context);
+        this.flattener=new JsonEventFlattener(splunk_style,maxdepth,overdepthastext,includePaths,typedValues,lazyValues);
+    }
+
+    @Override
+    protected List<Record> processAll(Record record, final FlowFile flowFile, final ProcessContext context) {
+        if (explodePath == null) {
+            return super.processAll(record, flowFile, context);
+        }
+        final ExplodedArray exploded = new ExplodedArray(explodePath);
+        return exploded.records(parse(record, exploded), governor);
     }
 
     @Override
     protected Record process(Record record, final FlowFile flowFile, final ProcessContext context) {
+        return parse(record, null);
+    }
+
+    /**
+     * @param exploded collects the elements of the exploded array, null if arrays are flattened
+     */
+    private Record parse(Record input, final ExplodedArray exploded) {
+        // lazy values are set without type checks and decoded by the record
+        final Record record = lazyValues ? new LazyJsonRecord(input) : input;
 
         final List<RecordField> newfields=new ArrayList<>();
 
@@ -262,146 +318,49 @@ public class JSONSParseRecord extends AbstractRecordProcessorWithSchemaUpdates {
                 final int isq=srcval.indexOf('[');
 
                  */
-                final StringBuilder json=new StringBuilder(fieldVal.getValue().toString());
-                final int icurv=json.indexOf("{");
-                final int isq=json.indexOf("[");
+                final Object srcval=fieldVal.getValue();
+                final CharSequence json=srcval instanceof CharSequence?(CharSequence)srcval:srcval.toString();
                 int istart=-1;
-                if(icurv != -1 && isq != -1){
-                    istart=icurv < isq ? icurv : isq;
+                for (int i=0;i<json.length();i++){
+                    final char c=json.charAt(i);
+                    if (c=='{' || c=='['){
+                        istart=i;
+                        break;
+                    }
                 }
-                else if (icurv!=-1) istart=icurv;
-                else if (isq!=-1) istart=isq;
                 //this.getLogger().debug("Start:{}",new Object[]{istart});
                 if(istart>=0){
-                    //String json=istart==0?srcval:srcval.substring(istart);
-                    if (istart>0)json.delete(0,istart);
-                        //this.getLogger().debug("JSON:{}", new Object[]{json});
-                        if (do_multijson /*&& mjson_pat.matcher(json).matches()*/) {
-                            //json = "[" + jsonsep_pat.matcher(json).replaceAll(",") + "]";
-                            if(replaceall(json,jsonsep_pat,",")>0) {
-                                json.insert(0, '[');
-                                json.append(']');
+                        // identical texts are parsed once
+                        final List<Map.Entry<String, Object>> cached=parseCache!=null?parseCache.get(json,istart,json.length()):null;
+                        if (cached!=null) {
+                            for (Map.Entry<String, Object> f : cached) {
+                                wrel(record, f.getKey(), f.getValue(), newfields, exploded, null);
                             }
+                            continue;
                         }
-                        if(remove_ilchar) {
-                            //json = new_line.matcher(json).replaceAll("\\\\n");
-                            //json = tab.matcher(json).replaceAll("    ");
-                            replaceall(json,new_line,"\\\\n");
-                            replaceall(json,tab,"    ");
-                        }
-                        final StringReader sr=new StringReader(json.toString());
+                        // keys and values of the text to cache, kept only if it is parsed without errors
+                        final List<Map.Entry<String, Object>> parsed=parseCache!=null?new ArrayList<>():null;
+                        boolean complete=false;
+                        // parsed in place, separators of multiple JSONs are read as commas of an array
+                        // and control characters in strings are escaped by the reader
+                        final int[] separators=do_multijson?splitter.split(json,istart):JsonCharSequenceReader.NO_SEPARATORS;
+                        // the structural scanner reads the source directly
+                        final JsonCharSequenceReader sr=structuralScanner?null:new JsonCharSequenceReader(json,istart,json.length(),separators,remove_ilchar);
                         try {
-                            final JsonParser parser = Json.createParser(sr);
-                            List<memory> path = new ArrayList<>();
-                            boolean isobject = false;
-                            boolean isarray = false;
-                            Integer arrayidx = null;
-                            String Key = "";
-                            int depth=0;
-
-                            while (parser.hasNext()) {
-                                JsonParser.Event event = parser.next();
-
-                                switch (event) {
-                                    case START_ARRAY:
-                                        if (maxdepth>0 && depth>=maxdepth){
-                                            if (overdepthastext) wrel(record, isarray, Key, path, parser.getValue().toString(), newfields, arrayidx);
-                                            parser.skipArray();
-                                        }
-                                        else {
-                                            if (isarray) {
-                                                path.add(new memory(Key, arrayidx));
-                                                //arrayidx++;
-                                            } else {
-                                                path.add(new memory(Key, null));
-                                            }
-                                            Key = "";
-                                            isarray = true;
-                                            arrayidx = 0;
-                                            depth++;
-                                        }
-                                        break;
-                                    case END_ARRAY:
-                                        if (path.size()>0){
-                                            memory last=path.remove(path.size() -1);
-                                            if (last.arrayidx!=null){
-                                                isarray=true;
-                                                arrayidx=last.arrayidx;
-                                                arrayidx++;
-                                            }
-                                            else {
-                                                isarray=false;
-                                                arrayidx=null;
-                                            }
-                                            Key=last.field;
-                                        }
-                                        /*
-                                        else {
-                                            isarray = false;
-                                            arrayidx = null;
-                                        }
-                                        */
-                                        //if (path.size() > 0) path.remove(path.size() - 1);
-                                        if(depth>0)depth--;
-                                        break;
-                                    case START_OBJECT:
-                                        if (maxdepth>0 && depth>=maxdepth){
-                                            if (overdepthastext) wrel(record, isarray, Key, path, parser.getValue().toString(), newfields, arrayidx);
-                                            parser.skipObject();
-                                        }
-                                        else {
-                                            path.add(new memory(Key, arrayidx));
-                                            isobject = true;
-                                            isarray = false;
-                                            arrayidx = null;
-                                            depth++;
-                                        }
-                                        break;
-                                    case END_OBJECT:
-                                        if (path.size() > 0){
-                                            memory last=path.remove(path.size() - 1);
-                                            Key=last.field;
-                                            arrayidx=last.arrayidx;
-                                            if (arrayidx!=null){
-                                                arrayidx++;
-                                                isarray=true;
-                                            }
-                                        }
-                                        isobject = false;
-                                        if (depth>0)depth--;
-                                        break;
-                                    case KEY_NAME:
-                                        Key=parser.getString();
-                                        break;
-                                    case VALUE_FALSE:
-                                    case VALUE_TRUE:
-                                    case VALUE_NUMBER:
-                                        if(maxdepth<=0 || depth<=maxdepth){
-                                            wrel(record, isarray, Key, path, parser.getValue(), newfields, arrayidx);
-                                        }
-                                        if (isarray) arrayidx++;
-                                        break;
-                                    case VALUE_NULL:
-                                        if(maxdepth<=0 || depth<=maxdepth) {
-                                            wrel(record, isarray, Key, path, null, newfields, arrayidx);
-                                        }
-                                        if (isarray) arrayidx++;
-                                        break;
-                                    case VALUE_STRING:
-                                        if(maxdepth<=0 || depth<=maxdepth) {
-                                            wrel(record, isarray, Key, path, parser.getString(), newfields, arrayidx);
-                                        }
-                                        if (isarray) arrayidx++;
-                                        break;
-                                }
-                            }
+                            final StructuralJsonScanner scanner = structuralScanner
+                                    ? new StructuralJsonScanner(json, istart, json.length(), separators, remove_ilchar)
+                                    : null;
+                            final JsonParser parser = scanner != null ? scanner : Json.createParser(sr);
+                            flattener.flatten(parser, sr, json, (key, value) -> wrel(record, key, value, newfields, exploded, parsed));
+                            complete = true;
                         }
                         catch (Exception e){
                             this.getLogger().error("Parsing Error:",e);
-                            wrel(record,false, "_JSON_parsing_error",null, e.getLocalizedMessage(), newfields, 0);
+                            wrel(record, JsonEventFlattener.PARSING_ERROR_KEY, e.getLocalizedMessage(), newfields, null, null);
                         }
 
-                        sr.close();
+                        if (sr != null) sr.close();
+                        if (parsed != null && complete) parseCache.put(json, istart, json.length(), parsed);
 
 
                 }
@@ -417,137 +376,36 @@ public class JSONSParseRecord extends AbstractRecordProcessorWithSchemaUpdates {
         return record;
     }
 
-    /*
-    public String getpath(List<memory> path){
-            if (path != null && path.size()>0) {
-                List<String> ps=new ArrayList<>();
-                int iter=0;
-                for (memory m: path){
-                    if (m.arrayidx!=null){
-                        ps.add( ((iter!=0 && m.field.length()>0)?'.':"") + m.field + "[" + m.arrayidx + "]");
-                    }
-                    else ps.add(((iter!=0 && m.field.length()>0)?'.':"") + m.field);
-                    if(m.field.length()>0 || m.arrayidx!=null)iter=1;
-                }
-                return String.join("",ps);
-            }
-            else return "";
-    }
-
-     */
-
-    public StringBuilder getpathsb(List<memory> path){
-        if (path != null && path.size()>0) {
-            StringBuilder ps=new StringBuilder(1024);
-            int iter=0;
-            for (memory m: path){
-                if (iter==0)iter=ps.length();
-                escapefieldname(ps,m,iter);
-                /*
-                boolean nosplunk=false;
-                if (!splunk_style && m.field.indexOf('.')!=-1){
-                    nosplunk=true;
-                }
-                if(iter!=0 && m.field.length()>0 && !nosplunk)ps.append('.');
-                if (nosplunk)ps.append("[\\\"");
-                ps.append(m.field);
-                if(nosplunk)ps.append("\\\"]");
-                if (m.arrayidx!=null){
-                    //ps.append( ((iter!=0 && m.field.length()>0 && !splunk)?'.':"") + m.field + "[" + m.arrayidx + "]");
-                    ps.append("["+ m.arrayidx +"]");
-                }
-                //else ps.append(((iter!=0 && m.field.length()>0)?'.':"" ) + m.field);
-
-                 */
-                //if(m.field.length()>0 || m.arrayidx!=null)iter=1;
-            }
-            return ps;
+    @Override
+    protected RecordSchema getWriteSchema(final RecordSchema schema, final ProcessContext context) {
+        final RecordSchema typed = Utils.withoutNullTypes(schema);
+        if (context.getProperty(JSONParseRecord.TYPE_CONFLICT).getValue().equals(JSONParseRecord.TYPE_CONFLICT_STRING.getValue())) {
+            return Utils.widenChoicesToString(typed);
         }
-        else return new StringBuilder("");
+        return typed;
     }
 
-    public void escapefieldname(StringBuilder ps,final memory m, int iter){
-        boolean nosplunk=false;
-        if (!splunk_style && m.field.indexOf('.')!=-1){
-            nosplunk=true;
-        }
-        if(iter>0 && m.field.length()>0 && !nosplunk)ps.append('.');
-        if (nosplunk)ps.append("[\\\"");
-        ps.append(m.field);
-        if(nosplunk)ps.append("\\\"]");
-        if (m.arrayidx!=null){
-            //ps.append( ((iter!=0 && m.field.length()>0 && !splunk)?'.':"") + m.field + "[" + m.arrayidx + "]");
-            ps.append("["+ m.arrayidx +"]");
-        }
-
-        //else ps.append(((iter!=0 && m.field.length()>0)?'.':"" ) + m.field);
-        /*
-        ps.append(
-                ((iter>0 && m.field.length()>0 && !nosplunk)?'.':"") +
-                        (nosplunk?"[\\\"":"") +
-                        m.field +
-                        (nosplunk?"\\\"]":"") +
-                        (m.arrayidx!=null?"["+ m.arrayidx +"]":"")
-        );
-
-         */
-
+    @Override
+    protected void updateCounters(final ProcessSession session) {
+        nameCacheStats.report(session);
+        governor.report(session);
+        if (parseCache != null) parseCache.report(session);
+        this.getLogger().debug("Field name cache hit rate:{}", FieldNameCache.hitRate());
     }
 
-    private void wrel(Record record,boolean isarray,String Key,List<memory> path,Object value,List<RecordField> newfields,Integer arrayidx){
-//        String key=this.getpath(path)+((Key.length()>0 && (path != null && path.size()>0))?".":"")+Key;
-        //StringBuilder key=this.getpathsb(path).append((Key.length()>0 && (path != null && path.size()>0))?".":"").append(Key);
-        StringBuilder key=this.getpathsb(path);
-        this.escapefieldname(key,new memory(Key,arrayidx),key.length());
-        //if (key.startsWith("."))key=key.substring(1);
-        /*
-        if(key.charAt(0)=='.')key.deleteCharAt(0);
-        if (isarray){
-            //key += "["+ arrayidx +"]";
-            key.append("["+ arrayidx +"]");
-        }
-
-         */
-        /*
-        else {
-            if (path.size() > 0) path.remove(path.size() - 1);
-        }
-
-         */
-
+    /**
+     * @param parsed collects the keys and values for the parse cache, null if not cached
+     */
+    private void wrel(Record record,String key,Object value,List<RecordField> newfields,ExplodedArray exploded,List<Map.Entry<String, Object>> parsed){
+        if (parsed != null) parsed.add(new AbstractMap.SimpleImmutableEntry<>(key, value));
 //        final RecordField keyf = new RecordField(ot_constants.FieldPrefix + key, RecordFieldType.STRING.getDataType(), true);
-        final RecordField keyf = new RecordField(key.insert(0, Utils.FIELD_PREFIX).toString(), RecordFieldType.STRING.getDataType(), true);
-        record.setValue(keyf, value);
-        newfields.add(keyf);
-
-    }
-
-    private int replaceall(StringBuilder sb,Pattern p,String replace){
-        Matcher matcher = p.matcher(sb);
-
-        //index of StringBuilder from where search should begin
-        int startIndex = 0;
-        int replaces=0;
-
-        while( matcher.find(startIndex) ){
-
-            sb.replace(matcher.start(), matcher.end(), replace);
-
-            //set next start index as start of the last match + length of replacement
-            startIndex = matcher.start() + replace.length();
-            replaces++;
+        final RecordFieldType type = typedValues || value == null ? Utils.fieldTypeOf(value) : RecordFieldType.STRING;
+        if (exploded != null && exploded.add(key, value, FieldNameCache.Naming.PLAIN, type, nameCacheStats)) {
+            return;
         }
-        return replaces;
-    }
-
-    class memory {
-        public final Integer arrayidx;
-        public final String field;
+        final RecordField keyf = FieldNameCache.field(key, FieldNameCache.Naming.PLAIN, type, nameCacheStats);
+        governor.setValue(record, newfields, key, keyf, value);
 
-        public memory(String field,Integer idx){
-            this.arrayidx=idx;
-            this.field=field;
-        }
     }
 
 }
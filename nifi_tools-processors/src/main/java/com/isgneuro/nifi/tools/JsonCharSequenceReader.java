@@ -0,0 +1,151 @@
+package com.isgneuro.nifi.tools;
+
+import java.io.Reader;
+import java.util.Arrays;
+
+/**
+ * Reads a range of a CharSequence as JSON text without copying it.
+ *
+ * Ranges given as separators (start, end pairs in ascending order) are read as ',' and the whole text
+ * is read as an array if there are any, so concatenated documents are parsed as one array.
+ * With escapeControlChars control characters inside strings are escaped on the fly, a tab is read as 4 spaces.
+ *
+ * Offsets of the chars read are mapped back to the source with {@link #sourceOffset(long)}.
+ */
+class JsonCharSequenceReader extends Reader {
+    static final int[] NO_SEPARATORS = new int[0];
+
+    private final CharSequence src;
+    private final int end;
+    private final int[] separators;
+    private final boolean escapeControlChars;
+
+    private int pos;
+    private int nextSeparator;
+    private boolean closeArray;
+    private boolean inString;
+    private boolean escaped;
+
+    private final char[] pending = new char[6];
+    private int pendingPos;
+    private int pendingLen;
+
+    // chars read so far and (read offset, source offset - read offset) where the difference changes
+    private long readCount;
+    private long[] shiftOffsets = new long[8];
+    private long[] shifts = new long[8];
+    private int shiftCount;
+
+    JsonCharSequenceReader(CharSequence src, int start, int end, int[] separators, boolean escapeControlChars) {
+        this.src = src;
+        this.pos = start;
+        this.end = end;
+        this.separators = separators;
+        this.escapeControlChars = escapeControlChars;
+        if (separators.length > 0) {
+            setPending("[");
+            closeArray = true;
+        }
+    }
+
+    JsonCharSequenceReader(CharSequence src, int start, boolean escapeControlChars) {
+        this(src, start, src.length(), NO_SEPARATORS, escapeControlChars);
+    }
+
+    @Override
+    public int read(char[] cbuf, int off, int len) {
+        int n = 0;
+        while (n < len) {
+            if (pendingPos < pendingLen) {
+                cbuf[off + n++] = pending[pendingPos++];
+                readCount++;
+                continue;
+            }
+            if (pos >= end) {
+                if (closeArray) {
+                    closeArray = false;
+                    setPending("]");
+                    continue;
+                }
+                break;
+            }
+            if (nextSeparator < separators.length && pos == separators[nextSeparator]) {
+                pos = separators[nextSeparator + 1];
+                nextSeparator += 2;
+                inString = false;
+                escaped = false;
+                setPending(",");
+                continue;
+            }
+            if (shiftCount == 0 || shifts[shiftCount - 1] != pos - readCount) {
+                addShift();
+            }
+            readCount++;
+            final char c = src.charAt(pos++);
+            if (inString) {
+                if (escaped) {
+                    escaped = false;
+                } else if (c == '\\') {
+                    escaped = true;
+                } else if (c == '"') {
+                    inString = false;
+                } else if (c < 0x20 && escapeControlChars) {
+                    readCount--;
+                    escapeControlChar(c);
+                    continue;
+                }
+            } else if (c == '"') {
+                inString = true;
+            }
+            cbuf[off + n++] = c;
+        }
+        return n == 0 && len > 0 ? -1 : n;
+    }
+
+    /**
+     * @return position in the source of the char read at the offset, chars added by the reader
+     * (array brackets, commas of separators, escapes) are mapped to a source position next to them
+     */
+    int sourceOffset(long readOffset) {
+        int i = Arrays.binarySearch(shiftOffsets, 0, shiftCount, readOffset);
+        if (i < 0) {
+            i = -i - 2;
+        }
+        return (int) (readOffset + (i < 0 ? shifts[0] : shifts[i]));
+    }
+
+    private void addShift() {
+        if (shiftCount == shiftOffsets.length) {
+            shiftOffsets = Arrays.copyOf(shiftOffsets, shiftCount * 2);
+            shifts = Arrays.copyOf(shifts, shiftCount * 2);
+        }
+        shiftOffsets[shiftCount] = readCount;
+        shifts[shiftCount++] = pos - readCount;
+    }
+
+    private void escapeControlChar(char c) {
+        switch (c) {
+            case '\n':
+                setPending("\\n");
+                break;
+            case '\r':
+                setPending("\\r");
+                break;
+            case '\t':
+                setPending("    ");
+                break;
+            default:
+                setPending(String.format("\\u%04x", (int) c));
+        }
+    }
+
+    private void setPending(String chars) {
+        chars.getChars(0, chars.length(), pending, 0);
+        pendingPos = 0;
+        pendingLen = chars.length();
+    }
+
+    @Override
+    public void close() {
+    }
+}
@@ -0,0 +1,187 @@
+package com.isgneuro.nifi.tools;
+
+import javax.json.stream.JsonParser;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Flattens the events of a javax.json parser into the field names of JSONSParseRecord.
+ *
+ * Member names are joined with '.', array elements are written as [index], names containing '.' as [\"name\"]
+ * unless Splunk style is set. Objects and arrays deeper than maxdepth are skipped or written as their source text.
+ * Shared by JSONSParseRecord and NDJsonFlattenReader, the state of a document is kept in local variables.
+ */
+class JsonEventFlattener {
+    static final String PARSING_ERROR_KEY = new JsonPathBuilder(false).leaf("_JSON_parsing_error", 0);
+
+    private final boolean splunkStyle;
+    private final int maxdepth;
+    private final boolean overdepthastext;
+    private final JsonPathTrie.Node includePaths;
+    private final boolean typedValues;
+    private final boolean lazyValues;
+
+    /**
+     * @param includePaths compiled include paths, null to extract everything
+     * @param lazyValues   strings and numbers are left in the source, the parser has to be a StructuralJsonScanner
+     */
+    JsonEventFlattener(boolean splunkStyle, int maxdepth, boolean overdepthastext, JsonPathTrie.Node includePaths,
+                       boolean typedValues, boolean lazyValues) {
+        this.splunkStyle = splunkStyle;
+        this.maxdepth = maxdepth;
+        this.overdepthastext = overdepthastext;
+        this.includePaths = includePaths;
+        this.typedValues = typedValues;
+        this.lazyValues = lazyValues;
+    }
+
+    /**
+     * @param reader reader of the parser, null if the parser locations are source offsets
+     * @param json   source of the parser, overdepth objects and arrays are cut from it
+     */
+    void flatten(JsonParser parser, JsonCharSequenceReader reader, CharSequence json, JsonStreamFlattener.FieldSink sink) {
+        final StructuralJsonScanner scanner = lazyValues ? (StructuralJsonScanner) parser : null;
+        // names, keys and array indexes of the open containers, every value name is a single copy of the name
+        final JsonPathBuilder keys = new JsonPathBuilder(splunkStyle);
+        boolean isarray = false;
+        int arrayidx = JsonPathBuilder.NO_INDEX;
+        String Key = "";
+        int depth=0;
+        // include paths nodes of the open containers
+        final Deque<JsonPathTrie.Node> nodes = new ArrayDeque<>();
+        final JsonPathTrie.Node root = includePaths == null ? JsonPathTrie.Node.ALL : includePaths;
+        JsonPathTrie.Node valueNode = root;
+
+        while (parser.hasNext()) {
+            JsonParser.Event event = parser.next();
+
+            if (event != JsonParser.Event.KEY_NAME && event != JsonParser.Event.END_OBJECT && event != JsonParser.Event.END_ARRAY) {
+                valueNode = nodes.isEmpty() ? root : isarray ? nodes.peek().element(arrayidx) : nodes.peek().member(Key);
+                if (valueNode == null) {
+                    // not included, skipped without parsing
+                    if (event == JsonParser.Event.START_ARRAY) parser.skipArray();
+                    else if (event == JsonParser.Event.START_OBJECT) parser.skipObject();
+                    if (isarray) arrayidx++;
+                    continue;
+                }
+            }
+
+            switch (event) {
+                case START_ARRAY:
+                    if (maxdepth>0 && depth>=maxdepth){
+                        if (overdepthastext && valueNode.included()) {
+                            sink.field(keys.leaf(Key, arrayidx), containerText(parser, reader, json, '['));
+                        } else {
+                            parser.skipArray();
+                        }
+                    }
+                    else {
+                        keys.push(Key, arrayidx);
+                        nodes.push(valueNode);
+                        Key = "";
+                        isarray = true;
+                        arrayidx = 0;
+                        depth++;
+                    }
+                    break;
+                case START_OBJECT:
+                    if (maxdepth>0 && depth>=maxdepth){
+                        if (overdepthastext && valueNode.included()) {
+                            sink.field(keys.leaf(Key, arrayidx), containerText(parser, reader, json, '{'));
+                        } else {
+                            parser.skipObject();
+                        }
+                    }
+                    else {
+                        keys.push(Key, arrayidx);
+                        nodes.push(valueNode);
+                        isarray = false;
+                        arrayidx = JsonPathBuilder.NO_INDEX;
+                        depth++;
+                    }
+                    break;
+                case END_ARRAY:
+                case END_OBJECT:
+                    // back to the key and the next array index of the container
+                    if (!keys.isEmpty()){
+                        Key=keys.lastField();
+                        arrayidx=keys.lastIndex();
+                        keys.pop();
+                        nodes.pop();
+                        isarray=arrayidx!=JsonPathBuilder.NO_INDEX;
+                        if (isarray) arrayidx++;
+                    }
+                    if (depth>0)depth--;
+                    break;
+                case KEY_NAME:
+                    Key=parser.getString();
+                    break;
+                case VALUE_FALSE:
+                case VALUE_TRUE:
+                case VALUE_NUMBER:
+                    if((maxdepth<=0 || depth<=maxdepth) && valueNode.included()){
+                        sink.field(keys.leaf(Key, arrayidx), lazyValues ? scanner.lazyValue(typedValues) : typedValues ? typedValue(parser, event) : parser.getValue());
+                    }
+                    if (isarray) arrayidx++;
+                    break;
+                case VALUE_NULL:
+                    if((maxdepth<=0 || depth<=maxdepth) && valueNode.included()) {
+                        sink.field(keys.leaf(Key, arrayidx), null);
+                    }
+                    if (isarray) arrayidx++;
+                    break;
+                case VALUE_STRING:
+                    if((maxdepth<=0 || depth<=maxdepth) && valueNode.included()) {
+                        sink.field(keys.leaf(Key, arrayidx), lazyValues ? scanner.lazyValue(typedValues) : parser.getString());
+                    }
+                    if (isarray) arrayidx++;
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Moves the parser to the end of the object or array starting at the current event.
+     *
+     * @return source text of the container cut between the parser locations before and after skipping it,
+     * the text of its value if the source position is not known
+     *
+     * @param reader reader of the parser, null if the parser locations are source offsets
+     */
+    private static String containerText(JsonParser parser, JsonCharSequenceReader reader, CharSequence json, char open) {
+        // the location is after the opening bracket
+        final int start = sourceOffset(parser, reader) - 1;
+        if (start < 0 || start >= json.length() || json.charAt(start) != open) {
+            return parser.getValue().toString();
+        }
+        if (open == '[') parser.skipArray();
+        else parser.skipObject();
+        // the location is after the closing bracket
+        return json.subSequence(start, sourceOffset(parser, reader)).toString();
+    }
+
+    /**
+     * @return position in the source after the char last read by the parser
+     */
+    private static int sourceOffset(JsonParser parser, JsonCharSequenceReader reader) {
+        final long offset = parser.getLocation().getStreamOffset() - 1;
+        return (reader == null ? (int) offset : reader.sourceOffset(offset)) + 1;
+    }
+
+    /**
+     * @return Long or Double for a number, integers not fitting a long as string, Boolean for true and false
+     */
+    private static Object typedValue(JsonParser parser, JsonParser.Event event) {
+        if (event == JsonParser.Event.VALUE_NUMBER) {
+            if (parser.isIntegralNumber()) {
+                try {
+                    return parser.getBigDecimal().longValueExact();
+                } catch (ArithmeticException e) {
+                    return parser.getString();
+                }
+            }
+            return parser.getBigDecimal().doubleValue();
+        }
+        return event == JsonParser.Event.VALUE_TRUE;
+    }
+}
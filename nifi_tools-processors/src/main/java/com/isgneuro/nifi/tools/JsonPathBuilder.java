@@ -0,0 +1,91 @@
+package com.isgneuro.nifi.tools;
+
+import java.util.Arrays;
+
+/**
+ * Field name of the current JSON value, built in one shared buffer as the parser enters and leaves containers.
+ *
+ * A segment is a member name, optionally followed by the [index] of an array element. Names are joined with '.',
+ * names containing '.' are written as [\"name\"] unless Splunk style is set. The name and index of every segment
+ * are kept, so the flattener restores its key and array index from them when a container ends.
+ */
+class JsonPathBuilder {
+    static final int NO_INDEX = -1;
+
+    private final boolean splunkStyle;
+    private final StringBuilder buffer = new StringBuilder(256);
+    private int[] lengths = new int[16];
+    private String[] fields = new String[16];
+    private int[] indexes = new int[16];
+    private int size;
+
+    JsonPathBuilder(boolean splunkStyle) {
+        this.splunkStyle = splunkStyle;
+    }
+
+    void push(String field, int arrayIdx) {
+        if (size == lengths.length) {
+            lengths = Arrays.copyOf(lengths, size * 2);
+            fields = Arrays.copyOf(fields, size * 2);
+            indexes = Arrays.copyOf(indexes, size * 2);
+        }
+        lengths[size] = buffer.length();
+        fields[size] = field;
+        indexes[size] = arrayIdx;
+        size++;
+        append(field, arrayIdx);
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * @return member name of the last segment
+     */
+    String lastField() {
+        return fields[size - 1];
+    }
+
+    /**
+     * @return array index of the last segment, NO_INDEX if it is not an array element
+     */
+    int lastIndex() {
+        return indexes[size - 1];
+    }
+
+    void pop() {
+        if (size > 0) {
+            buffer.setLength(lengths[--size]);
+            fields[size] = null;
+        }
+    }
+
+    /**
+     * @return the name of a value at the current path, the path itself is left unchanged
+     */
+    String leaf(String field, int arrayIdx) {
+        final int length = buffer.length();
+        append(field, arrayIdx);
+        final String name = buffer.toString();
+        buffer.setLength(length);
+        return name;
+    }
+
+    void clear() {
+        buffer.setLength(0);
+        Arrays.fill(fields, 0, size, null);
+        size = 0;
+    }
+
+    private void append(String field, int arrayIdx) {
+        final boolean nosplunk = !splunkStyle && field.indexOf('.') != -1;
+        if (buffer.length() > 0 && field.length() > 0 && !nosplunk) buffer.append('.');
+        if (nosplunk) buffer.append("[\\\"");
+        buffer.append(field);
+        if (nosplunk) buffer.append("\\\"]");
+        if (arrayIdx != NO_INDEX) {
+            buffer.append('[').append(arrayIdx).append(']');
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package com.isgneuro.nifi.tools;
+
+import org.apache.nifi.components.ValidationResult;
+import org.apache.nifi.components.Validator;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Include list of JSON paths compiled into a trie, used to skip the parts of a document which are not extracted.
+ *
+ * Paths are separated by commas. A path is a list of member names separated by '.', an array element is [index]
+ * after the name of the array, e.g. request.headers.host or items[0].id. A name * matches any member and [*]
+ * any element. A path includes the whole subtree of the value it ends at.
+ *
+ * Wildcards are merged into the named children when the trie is compiled, so a document is matched
+ * by following one node per container.
+ */
+final class JsonPathTrie {
+
+    static final Validator VALIDATOR = (subject, value, context) -> {
+        String reason = null;
+        try {
+            compile(value);
+        } catch (IllegalArgumentException e) {
+            reason = e.getMessage();
+        }
+        return new ValidationResult.Builder().subject(subject).input(value).explanation(reason).valid(reason == null).build();
+    };
+
+    static final class Node {
+        /**
+         * Matches everything, the state of a document without include paths.
+         */
+        static final Node ALL = new Node();
+
+        static {
+            ALL.included = true;
+        }
+
+        private boolean included;
+        private final Map<String, Node> members = new HashMap<>();
+        private Node anyMember;
+        private final Map<Integer, Node> elements = new HashMap<>();
+        private Node anyElement;
+
+        /**
+         * @return true if the value at this node and all values below it are extracted
+         */
+        boolean included() {
+            return included;
+        }
+
+        /**
+         * @return the node of the member value or null if it is not extracted
+         */
+        Node member(String name) {
+            if (included) {
+                return this;
+            }
+            final Node child = members.get(name);
+            return child != null ? child : anyMember;
+        }
+
+        /**
+         * @return the node of the array element or null if it is not extracted
+         */
+        Node element(int index) {
+            if (included) {
+                return this;
+            }
+            final Node child = elements.get(index);
+            return child != null ? child : anyElement;
+        }
+
+        private Node anyMember() {
+            if (anyMember == null) anyMember = new Node();
+            return anyMember;
+        }
+
+        private Node anyElement() {
+            if (anyElement == null) anyElement = new Node();
+            return anyElement;
+        }
+    }
+
+    private JsonPathTrie() {
+    }
+
+    /**
+     * @return root node of the trie
+     * @throws IllegalArgumentException if a path is malformed
+     */
+    static Node compile(String paths) {
+        final Node root = new Node();
+        int count = 0;
+        for (String path : paths.split(",")) {
+            path = path.trim();
+            if (!path.isEmpty()) {
+                insert(root, path);
+                count++;
+            }
+        }
+        if (count == 0) {
+            throw new IllegalArgumentException("no paths");
+        }
+        pushDownWildcards(root);
+        return root;
+    }
+
+    private static void insert(Node root, String path) {
+        Node node = root;
+        int i = 0;
+        while (i < path.length()) {
+            final char c = path.charAt(i);
+            if (c == '[') {
+                final int close = path.indexOf(']', i);
+                if (close < 0) {
+                    throw new IllegalArgumentException("unclosed [ in " + path);
+                }
+                final String index = path.substring(i + 1, close).trim();
+                if (index.equals("*")) {
+                    node = node.anyElement();
+                } else {
+                    try {
+                        node = node.elements.computeIfAbsent(Integer.parseInt(index), k -> new Node());
+                    } catch (NumberFormatException e) {
+                        throw new IllegalArgumentException("not an array index [" + index + "] in " + path);
+                    }
+                }
+                i = close + 1;
+                if (i < path.length() && path.charAt(i) == '.') {
+                    i++;
+                }
+            } else {
+                int end = i;
+                while (end < path.length() && path.charAt(end) != '.' && path.charAt(end) != '[') {
+                    end++;
+                }
+                final String name = path.substring(i, end);
+                if (name.isEmpty()) {
+                    throw new IllegalArgumentException("empty name in " + path);
+                }
+                node = name.equals("*") ? node.anyMember() : node.members.computeIfAbsent(name, k -> new Node());
+                i = end < path.length() && path.charAt(end) == '.' ? end + 1 : end;
+            }
+        }
+        node.included = true;
+    }
+
+    /**
+     * Merges the wildcard child of every node into its named children, so that a named child alone decides.
+     */
+    private static void pushDownWildcards(Node node) {
+        if (node.anyMember != null) {
+            for (Node child : node.members.values()) {
+                merge(child, node.anyMember);
+            }
+        }
+        if (node.anyElement != null) {
+            for (Node child : node.elements.values()) {
+                merge(child, node.anyElement);
+            }
+        }
+        for (Node child : node.members.values()) {
+            pushDownWildcards(child);
+        }
+        for (Node child : node.elements.values()) {
+            pushDownWildcards(child);
+        }
+        if (node.anyMember != null) pushDownWildcards(node.anyMember);
+        if (node.anyElement != null) pushDownWildcards(node.anyElement);
+    }
+
+    private static void merge(Node target, Node source) {
+        target.included |= source.included;
+        source.members.forEach((name, child) -> merge(target.members.computeIfAbsent(name, k -> new Node()), child));
+        source.elements.forEach((index, child) -> merge(target.elements.computeIfAbsent(index, k -> new Node()), child));
+        if (source.anyMember != null) merge(target.anyMember(), source.anyMember);
+        if (source.anyElement != null) merge(target.anyElement(), source.anyElement);
+    }
+}
@@ -0,0 +1,308 @@
+package com.isgneuro.nifi.tools;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import javax.json.stream.JsonParsingException;
+import java.io.IOException;
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.util.Arrays;
+
+/**
+ * Flattens JSON while parsing it, producing the same field names as JsonFlattener.flattenAsMap
+ * followed by the Splunk style rewrite and the maximum depth filter of JSONParseRecord.
+ *
+ * Names of members containing '.', '[' or ']' are written as [\"name\"], array elements as [index].
+ * Members nested deeper than maxDepth objects and values not matching the include paths are skipped without being parsed.
+ * Empty objects and arrays are emitted as {} and [], null values as null, numbers in BigDecimal notation.
+ * With typed values numbers are emitted as Long or Double (integers not fitting a long stay strings) and booleans as Boolean.
+ *
+ * Tokens are read from a Jackson parser or from a javax.json parser such as {@link StructuralJsonScanner}.
+ *
+ * Not thread safe, the state of the current document is kept between the tokens.
+ */
+class JsonStreamFlattener {
+    static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    interface FieldSink {
+        void field(String name, Object value);
+    }
+
+    private interface ScalarReader {
+        Object read(javax.json.stream.JsonParser parser, javax.json.stream.JsonParser.Event event);
+    }
+
+    private final boolean splunkStyle;
+    private final int maxDepth;
+    private final JsonPathTrie.Node includePaths;
+    private final boolean typedValues;
+
+    private final StringBuilder path = new StringBuilder(256);
+    // open containers: path length of the container, number of members/elements seen, member depth, kind
+    private int[] pathLengths = new int[16];
+    private int[] counts = new int[16];
+    private int[] levels = new int[16];
+    private boolean[] arrays = new boolean[16];
+    private JsonPathTrie.Node[] nodes = new JsonPathTrie.Node[16];
+    private int top;
+    // member depth and include paths node of the value being parsed
+    private int level;
+    private JsonPathTrie.Node node;
+
+    /**
+     * @param includePaths compiled include paths, null to extract everything
+     */
+    JsonStreamFlattener(boolean splunkStyle, int maxDepth, JsonPathTrie.Node includePaths, boolean typedValues) {
+        this.splunkStyle = splunkStyle;
+        this.maxDepth = maxDepth;
+        this.includePaths = includePaths == null ? JsonPathTrie.Node.ALL : includePaths;
+        this.typedValues = typedValues;
+    }
+
+    void flatten(Reader json, FieldSink sink) throws IOException {
+        try (JsonParser parser = JSON_FACTORY.createParser(json)) {
+            flatten(parser, sink);
+        }
+    }
+
+    void flatten(JsonParser parser, FieldSink sink) throws IOException {
+        reset();
+        JsonToken token = parser.nextToken();
+        while (token != null) {
+            if (token == JsonToken.FIELD_NAME) {
+                if (!startMember(parser.getCurrentName())) {
+                    parser.nextToken();
+                    parser.skipChildren();
+                }
+            } else if (token == JsonToken.END_OBJECT || token == JsonToken.END_ARRAY) {
+                endContainer(sink);
+                if (top < 0) {
+                    break;
+                }
+            } else {
+                if (top >= 0 && arrays[top] && !startElement()) {
+                    parser.skipChildren();
+                } else if (token == JsonToken.START_OBJECT) {
+                    startContainer(false);
+                } else if (token == JsonToken.START_ARRAY) {
+                    startContainer(true);
+                } else if (top >= 0) {
+                    if (node.included()) {
+                        sink.field(path.toString(), scalarValue(parser, token));
+                    }
+                } else {
+                    // scalar document, nothing to flatten
+                    break;
+                }
+            }
+            token = parser.nextToken();
+        }
+        if (parser.nextToken() != null) {
+            throw new JsonParseException(parser, "Unexpected content after the end of JSON");
+        }
+    }
+
+    void flatten(javax.json.stream.JsonParser parser, FieldSink sink) {
+        flatten(parser, sink, this::scalarValue);
+    }
+
+    /**
+     * Flattens with the strings and numbers left in the source, see {@link StructuralJsonScanner#lazyValue(boolean)}.
+     */
+    void flattenLazy(StructuralJsonScanner scanner, FieldSink sink) {
+        flatten(scanner, sink, (parser, event) -> scanner.lazyValue(typedValues));
+    }
+
+    private void flatten(javax.json.stream.JsonParser parser, FieldSink sink, ScalarReader scalars) {
+        reset();
+        while (parser.hasNext()) {
+            final javax.json.stream.JsonParser.Event event = parser.next();
+            if (event == javax.json.stream.JsonParser.Event.KEY_NAME) {
+                if (!startMember(parser.getString())) {
+                    skipValue(parser, parser.next());
+                }
+            } else if (event == javax.json.stream.JsonParser.Event.END_OBJECT || event == javax.json.stream.JsonParser.Event.END_ARRAY) {
+                endContainer(sink);
+                if (top < 0) {
+                    break;
+                }
+            } else {
+                if (top >= 0 && arrays[top] && !startElement()) {
+                    skipValue(parser, event);
+                } else if (event == javax.json.stream.JsonParser.Event.START_OBJECT) {
+                    startContainer(false);
+                } else if (event == javax.json.stream.JsonParser.Event.START_ARRAY) {
+                    startContainer(true);
+                } else if (top >= 0) {
+                    if (node.included()) {
+                        sink.field(path.toString(), scalars.read(parser, event));
+                    }
+                } else {
+                    // scalar document, nothing to flatten
+                    break;
+                }
+            }
+        }
+        if (parser.hasNext()) {
+            throw new JsonParsingException("Unexpected content after the end of JSON", parser.getLocation());
+        }
+    }
+
+    private static void skipValue(javax.json.stream.JsonParser parser, javax.json.stream.JsonParser.Event event) {
+        if (event == javax.json.stream.JsonParser.Event.START_OBJECT) {
+            parser.skipObject();
+        } else if (event == javax.json.stream.JsonParser.Event.START_ARRAY) {
+            parser.skipArray();
+        }
+    }
+
+    private void reset() {
+        path.setLength(0);
+        top = -1;
+        level = 0;
+        node = includePaths;
+    }
+
+    private void startContainer(boolean array) {
+        if (++top == pathLengths.length) {
+            int size = top * 2;
+            pathLengths = Arrays.copyOf(pathLengths, size);
+            counts = Arrays.copyOf(counts, size);
+            levels = Arrays.copyOf(levels, size);
+            arrays = Arrays.copyOf(arrays, size);
+            nodes = Arrays.copyOf(nodes, size);
+        }
+        pathLengths[top] = path.length();
+        counts[top] = 0;
+        levels[top] = level;
+        arrays[top] = array;
+        nodes[top] = node;
+    }
+
+    private void endContainer(FieldSink sink) {
+        path.setLength(pathLengths[top]);
+        if (counts[top] == 0 && top > 0 && nodes[top].included()) {
+            sink.field(path.toString(), arrays[top] ? "[]" : "{}");
+        }
+        top--;
+    }
+
+    /**
+     * @return false if the member is deeper than the maximum depth or not included and has to be skipped
+     */
+    private boolean startMember(String name) {
+        path.setLength(pathLengths[top]);
+        counts[top]++;
+        level = levels[top] + 1;
+        if (maxDepth > 0 && level > maxDepth) {
+            return false;
+        }
+        node = nodes[top].member(name);
+        if (node == null) {
+            return false;
+        }
+        appendMember(name);
+        return true;
+    }
+
+    /**
+     * @return false if the element is not included and has to be skipped
+     */
+    private boolean startElement() {
+        path.setLength(pathLengths[top]);
+        final int index = counts[top]++;
+        level = levels[top];
+        node = nodes[top].element(index);
+        if (node == null) {
+            return false;
+        }
+        path.append('[').append(index).append(']');
+        return true;
+    }
+
+    private void appendMember(String name) {
+        final boolean brackets = name.indexOf('[') >= 0 || name.indexOf(']') >= 0;
+        if (!brackets && name.indexOf('.') < 0) {
+            if (path.length() > 0) path.append('.');
+            path.append(name);
+        } else if (splunkStyle && !brackets && !name.isEmpty()) {
+            // [\"name\"] is rewritten to .name in Splunk style
+            if (path.length() > 0) path.append('.');
+            appendEscaped(name);
+        } else {
+            final boolean first = path.length() == 0;
+            path.append("[\\\"");
+            appendEscaped(name);
+            path.append("\\\"]");
+            if (splunkStyle && first) {
+                path.deleteCharAt(0);
+            }
+        }
+    }
+
+    private void appendEscaped(String name) {
+        for (int i = 0; i < name.length(); i++) {
+            final char c = name.charAt(i);
+            if (c == '"' || c == '\\') {
+                path.append('\\').append(c);
+            } else if (c < 0x20) {
+                path.append(String.format("\\u%04x", (int) c));
+            } else {
+                path.append(c);
+            }
+        }
+    }
+
+    private Object scalarValue(JsonParser parser, JsonToken token) throws IOException {
+        switch (token) {
+            case VALUE_STRING:
+                return parser.getText();
+            case VALUE_NUMBER_INT:
+                if (typedValues && parser.getNumberType() != JsonParser.NumberType.BIG_INTEGER) {
+                    return parser.getLongValue();
+                }
+                return parser.getDecimalValue().toString();
+            case VALUE_NUMBER_FLOAT:
+                if (typedValues) {
+                    return parser.getDoubleValue();
+                }
+                return parser.getDecimalValue().toString();
+            case VALUE_TRUE:
+                return typedValues ? Boolean.TRUE : "true";
+            case VALUE_FALSE:
+                return typedValues ? Boolean.FALSE : "false";
+            default:
+                return null;
+        }
+    }
+
+    private Object scalarValue(javax.json.stream.JsonParser parser, javax.json.stream.JsonParser.Event event) {
+        switch (event) {
+            case VALUE_STRING:
+                return parser.getString();
+            case VALUE_NUMBER: {
+                final BigDecimal number = parser.getBigDecimal();
+                if (!typedValues) {
+                    return number.toString();
+                }
+                if (!parser.isIntegralNumber()) {
+                    return number.doubleValue();
+                }
+                try {
+                    return number.longValueExact();
+                } catch (ArithmeticException e) {
+                    return number.toString();
+                }
+            }
+            case VALUE_TRUE:
+                return typedValues ? Boolean.TRUE : "true";
+            case VALUE_FALSE:
+                return typedValues ? Boolean.FALSE : "false";
+            default:
+                return null;
+        }
+    }
+}
@@ -15,6 +15,7 @@ import org.apache.nifi.components.ValidationResult;
 import org.apache.nifi.expression.ExpressionLanguageScope;
 import org.apache.nifi.flowfile.FlowFile;
 import org.apache.nifi.processor.ProcessContext;
+import org.apache.nifi.processor.ProcessSession;
 import org.apache.nifi.record.path.FieldValue;
 import org.apache.nifi.record.path.RecordPath;
 import org.apache.nifi.record.path.RecordPathResult;
@@ -23,12 +24,10 @@ import org.apache.nifi.record.path.validation.RecordPathPropertyNameValidator;
 import org.apache.nifi.serialization.SimpleRecordSchema;
 import org.apache.nifi.serialization.record.Record;
 import org.apache.nifi.serialization.record.RecordField;
-import org.apache.nifi.serialization.record.RecordFieldType;
+import org.apache.nifi.serialization.record.RecordSchema;
 import org.apache.nifi.processor.util.StandardValidators;
-import javax.xml.bind.DatatypeConverter;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Collections;
 import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -53,6 +52,11 @@ public class KVParseRecord extends AbstractRecordProcessorWithSchemaUpdates {
 	private final Pattern quot = Pattern.compile("\"(?<value>.+)\"$");
 	private final Pattern GetLastWorld = Pattern.compile("^.*?\\W*(\\w\\S+)$");
 
+	private final FieldNameCache.Stats nameCacheStats = new FieldNameCache.Stats();
+	private SchemaWidthGovernor governor = SchemaWidthGovernor.NONE;
+	private KeyValueLexer lexer = null;
+	private KeyValueTemplates templates = null;
+	private String templateSourceAttribute = null;
 	private volatile RecordPathCache recordPathCache;
 	private volatile List<String> recordPaths;
 
@@ -112,6 +116,66 @@ public class KVParseRecord extends AbstractRecordProcessorWithSchemaUpdates {
             .required(true)
             .build();
 
+    static final AllowableValue PARSER_REGEX = new AllowableValue("regex","regex",
+            "Pairs are split with the connector and separator regular expressions (default)");
+    static final AllowableValue PARSER_LEXER = new AllowableValue("lexer","lexer",
+            "Pairs are read in a single pass with the lexer connectors and separators, linear in the input length");
+
+    static final PropertyDescriptor PARSER = new PropertyDescriptor.Builder()
+            .name("kv_parser")
+            .displayName("Parser")
+            .description("Specifies how key-value pairs are found")
+            .allowableValues(PARSER_REGEX, PARSER_LEXER)
+            .defaultValue(PARSER_REGEX.getValue())
+            .expressionLanguageSupported(ExpressionLanguageScope.NONE)
+            .required(true)
+            .build();
+
+    static final PropertyDescriptor LEXER_CONNECTORS = new PropertyDescriptor.Builder()
+            .name("kv_lexer_connectors")
+            .displayName("Lexer connectors")
+            .description("Comma separated literal connectors between key and value used by the lexer, the longest one matching is used")
+            .defaultValue("=,::")
+            .expressionLanguageSupported(ExpressionLanguageScope.NONE)
+            .addValidator(StandardValidators.NON_EMPTY_VALIDATOR)
+            .required(true)
+            .build();
+
+    static final PropertyDescriptor LEXER_SEPARATORS = new PropertyDescriptor.Builder()
+            .name("kv_lexer_separators")
+            .displayName("Lexer separators")
+            .description("Characters separating key-value pairs used by the lexer in addition to whitespace, e.g. ,;")
+            .expressionLanguageSupported(ExpressionLanguageScope.NONE)
+            .addValidator(StandardValidators.NON_EMPTY_VALIDATOR)
+            .required(false)
+            .build();
+
+    static final AllowableValue TEMPLATE_LEARNING_SET = new AllowableValue("true","true",
+            "Learn the key sequences of the lines and parse matching lines by position");
+    static final AllowableValue TEMPLATE_LEARNING_UNSET = new AllowableValue("false","false",
+            "Parse every line with the lexer");
+
+    static final PropertyDescriptor TEMPLATE_LEARNING = new PropertyDescriptor.Builder()
+            .name("kv_template_learning")
+            .displayName("Template learning")
+            .description("Learn the keys and the text between the values of the parsed lines of each source. A line with the same "
+                    + "text around its values is parsed by comparing the text, other lines by the lexer. Requires the lexer parser")
+            .allowableValues(TEMPLATE_LEARNING_SET, TEMPLATE_LEARNING_UNSET)
+            .defaultValue(TEMPLATE_LEARNING_UNSET.getValue())
+            .expressionLanguageSupported(ExpressionLanguageScope.NONE)
+            .required(true)
+            .build();
+
+    static final PropertyDescriptor TEMPLATE_SOURCE_ATTRIBUTE = new PropertyDescriptor.Builder()
+            .name("kv_template_source")
+            .displayName("Template source attribute")
+            .description("FlowFile attribute naming the source of the lines, e.g. a device type. Templates are learned for each "
+                    + "value of the attribute and parsed field, for each parsed field if not set")
+            .expressionLanguageSupported(ExpressionLanguageScope.NONE)
+            .addValidator(StandardValidators.NON_EMPTY_VALIDATOR)
+            .required(false)
+            .build();
+
     static final AllowableValue ENCODE_KEYS_SET = new AllowableValue("true","true",
             "URLEncode field names");
 
@@ -137,6 +201,13 @@ public class KVParseRecord extends AbstractRecordProcessorWithSchemaUpdates {
         properties.add(MAXVALLEN);
         properties.add(MAXINPUTLEN);
         properties.add(ENCODE_KEYS);
+        properties.add(SchemaWidthGovernor.MAX_FIELDS);
+        properties.add(SchemaWidthGovernor.DENIED_KEYS);
+        properties.add(PARSER);
+        properties.add(LEXER_CONNECTORS);
+        properties.add(LEXER_SEPARATORS);
+        properties.add(TEMPLATE_LEARNING);
+        properties.add(TEMPLATE_SOURCE_ATTRIBUTE);
         return properties;
     }
 
@@ -155,16 +226,24 @@ public class KVParseRecord extends AbstractRecordProcessorWithSchemaUpdates {
     @Override
     protected Collection<ValidationResult> customValidate(final ValidationContext validationContext) {
         final boolean containsDynamic = validationContext.getProperties().keySet().stream().anyMatch(PropertyDescriptor::isDynamic);
-
-        if (containsDynamic) {
-            return Collections.emptyList();
+        final List<ValidationResult> results = new ArrayList<>();
+
+        if (!containsDynamic) {
+            results.add(new ValidationResult.Builder()
+                .subject("User-defined Properties")
+                .valid(false)
+                .explanation("At least one RecordPath must be specified")
+                .build());
         }
-
-        return Collections.singleton(new ValidationResult.Builder()
-            .subject("User-defined Properties")
-            .valid(false)
-            .explanation("At least one RecordPath must be specified")
-            .build());
+        if (validationContext.getProperty(TEMPLATE_LEARNING).getValue().equals(TEMPLATE_LEARNING_SET.getValue())
+                && !validationContext.getProperty(PARSER).getValue().equals(PARSER_LEXER.getValue())) {
+            results.add(new ValidationResult.Builder()
+                .subject(TEMPLATE_LEARNING.getDisplayName())
+                .valid(false)
+                .explanation("Template learning requires the lexer parser")
+                .build());
+        }
+        return results;
     }
 
 	@OnScheduled
@@ -186,8 +265,25 @@ public class KVParseRecord extends AbstractRecordProcessorWithSchemaUpdates {
 		Pair_pat = Pattern.compile("(?ms)(?<=" + kvcon + "\\s{0,100}([^\"\\s]{0," + maxfieldlength + "}?|(\".{0,"
 				+ maxfieldlength + "}\")))" + separator);
 		KV_pat = Pattern.compile("(?ms)\\s*" + kvcon + "\\s*");
+		governor = SchemaWidthGovernor.of(context);
+		lexer = context.getProperty(PARSER).getValue().equals(PARSER_LEXER.getValue())
+				? KeyValueLexer.of(context.getProperty(LEXER_CONNECTORS).getValue(), context.getProperty(LEXER_SEPARATORS).getValue(),
+						Integer.parseInt(maxfieldlength))
+				: null;
+		templates = lexer != null && context.getProperty(TEMPLATE_LEARNING).getValue().equals(TEMPLATE_LEARNING_SET.getValue())
+				? new KeyValueTemplates(lexer)
+				: null;
+		templateSourceAttribute = context.getProperty(TEMPLATE_SOURCE_ATTRIBUTE).isSet() ? context.getProperty(TEMPLATE_SOURCE_ATTRIBUTE).getValue() : null;
 	}
 
+    @Override
+    protected void updateCounters(final ProcessSession session) {
+        nameCacheStats.report(session);
+        governor.report(session);
+        if (templates != null) templates.report(session);
+        this.getLogger().debug("Field name cache hit rate:{}", FieldNameCache.hitRate());
+    }
+
     @Override
     protected Record process(Record record, final FlowFile flowFile, final ProcessContext context) {
         final boolean set_child_fields_prefix=context.getProperty(PARENT_FIELD_PREFIX).getValue().equals(PARENT_FIELD_PREFIX_SET.getValue());
@@ -198,6 +294,8 @@ public class KVParseRecord extends AbstractRecordProcessorWithSchemaUpdates {
 		final boolean do_encode_keys = context.getProperty(ENCODE_KEYS).getValue().equals(ENCODE_KEYS_SET.getValue());
 
         final List<RecordField> newfields = new ArrayList<>();
+        // schema of the template matching the only parsed field
+        RecordSchema templateSchema = null;
 
         //        final Pattern kvpat = Pattern.compile("(?ms)(?:^|" + separator + ")" +
 //                "(?:(?:\"(?<key>[^\"]*?(?:(?:\\\\\")*?[^\"]*?)*?[^\\\\])\")|(?<key1>[^\"\\s]*?))\\s*"
@@ -214,10 +312,41 @@ public class KVParseRecord extends AbstractRecordProcessorWithSchemaUpdates {
             for (FieldValue fieldVal:selectedFields) {
                 this.getLogger().debug("Field value:{}, name:{}", new Object[]{fieldVal.getValue(), fieldVal.getField().getFieldName()});
                 final String field_prefix=set_child_fields_prefix?fieldVal.getField().getFieldName()+".":"";
+                final FieldNameCache.Naming naming=new FieldNameCache.Naming(field_prefix,do_encode_keys,false);
 
                 String srcval=fieldVal.getValue().toString();
                 if(maxinputlength>-1 && srcval.length() > maxinputlength)srcval=srcval.substring(0,maxinputlength);
                 this.getLogger().debug("SrcVal:" + srcval);
+                if (lexer != null) {
+                    // keys and values are cut from the source, no pair strings are made
+                    final KeyValueLexer.PairSink sink = (src, pair) -> {
+                        final String key = src.subSequence(pair.keyStart, pair.keyEnd).toString();
+                        final RecordField keyf = FieldNameCache.field(key, naming, nameCacheStats);
+                        governor.setValue(record, newfields, key, keyf, src.subSequence(pair.valueStart, pair.valueEnd).toString());
+                    };
+                    if (templates == null) {
+                        lexer.lex(srcval, 0, srcval.length(), sink);
+                        continue;
+                    }
+                    final String source = (templateSourceAttribute != null ? flowFile.getAttribute(templateSourceAttribute) : "")
+                            + "/" + fieldVal.getField().getFieldName();
+                    final KeyValueTemplates.Match match = templates.match(source, naming, srcval);
+                    if (match != null) {
+                        final KeyValueTemplates.Template template = match.template;
+                        for (int k = 0; k < template.keys.length; k++) {
+                            final String value = srcval.substring(match.values[2 * k], match.values[2 * k + 1]);
+                            governor.setValue(record, newfields, template.keys[k], template.fields[k], value);
+                        }
+                        if (governor == SchemaWidthGovernor.NONE && newfields.size() == template.fields.length) {
+                            templateSchema = template.schema;
+                        }
+                        continue;
+                    }
+                    final KeyValueTemplates.Recorder recorder = new KeyValueTemplates.Recorder(sink);
+                    lexer.lex(srcval, 0, srcval.length(), recorder);
+                    templates.learn(source, naming, srcval, recorder, nameCacheStats);
+                    continue;
+                }
                 //final String[] pairs=srcval.split("(?ms)(?<="+kvcon+"\\s{0,100}([^\"\\s]{0,"+maxfieldlength+
                 //       "}?|(\".{0,"+maxfieldlength+"}\")))"+separator);
                 final String[] pairs=Pair_pat.split(srcval);
@@ -244,7 +373,7 @@ public class KVParseRecord extends AbstractRecordProcessorWithSchemaUpdates {
                         }
                        // try {
                             //if (do_encode_keys) key = java.net.URLEncoder.encode(key, "UTF-8");
-                            if (do_encode_keys)key= DatatypeConverter.printHexBinary((field_prefix + key).getBytes());
+                            // encoded once per key by FieldNameCache
                        // }
                         /*catch (java.io.UnsupportedEncodingException e){
                             this.getLogger().error("Unsupported Encoding:{} in:{} Parsing error:",new Object[]{key,srcval},e);
@@ -256,9 +385,8 @@ public class KVParseRecord extends AbstractRecordProcessorWithSchemaUpdates {
                         //final String value = kvmat.group("value") != null ? kvmat.group("value") : kvmat.group("value1");
                         //this.getLogger().info("Key:{} Value:{} Key1:{} Value1:{}", new Object[]{kvmat.group("key"), kvmat.group("value"), kvmat.group("key1"), kvmat.group("value1")});
 
-                        final RecordField keyf = new RecordField(Utils.FIELD_PREFIX + key, RecordFieldType.STRING.getDataType(), true);
-                        record.setValue(keyf, value);
-                        newfields.add(keyf);
+                        final RecordField keyf = FieldNameCache.field(key, naming, nameCacheStats);
+                        governor.setValue(record, newfields, key, keyf, value);
                     }
                 }
             }
@@ -267,7 +395,9 @@ public class KVParseRecord extends AbstractRecordProcessorWithSchemaUpdates {
         //RecordSchema oldsch=record.getSchema();
         //this.getLogger().info("schema:{}",new Object[]{oldsch});
         //record.incorporateInactiveFields(); //performance issue
-        record.incorporateSchema(new SimpleRecordSchema(newfields));
+        // fields added after the template change the number of fields
+        record.incorporateSchema(templateSchema != null && newfields.size() == templateSchema.getFieldCount()
+                ? templateSchema : new SimpleRecordSchema(newfields));
 
         return record;
     }
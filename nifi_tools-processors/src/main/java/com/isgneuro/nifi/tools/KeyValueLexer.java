@@ -0,0 +1,195 @@
+package com.isgneuro.nifi.tools;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Single pass lexer of key=value text, an alternative to the pair and connector regular expressions of KVParseRecord.
+ *
+ * The key of a pair is the last token before the connector, whitespace between them is allowed. Whitespace after
+ * the connector is skipped unless the next token is the key of another pair, then the value is empty. A value is
+ * the text up to whitespace or a separator character, or a quoted string in which \" does not end the value.
+ * A quote not closed within the maximum value length starts an unquoted value, an unquoted value longer than it
+ * is cut and the rest of its token skipped. Text which is not a pair is skipped.
+ *
+ * Every char is looked at a bounded number of times, the pairs are passed as positions in the source.
+ */
+final class KeyValueLexer {
+
+    /**
+     * Positions of a pair in the source, reused for all the pairs of a lex call.
+     */
+    static final class Pair {
+        // start of the key, after the opening quote of a quoted key
+        int keyStart;
+        int keyEnd;
+        int connectorStart;
+        int connectorEnd;
+        // start of the value, after the opening quote of a quoted value
+        int valueStart;
+        int valueEnd;
+        // position after the value and its closing quote
+        int next;
+    }
+
+    interface PairSink {
+        void pair(CharSequence src, Pair pair);
+    }
+
+    private final String[] connectors;
+    private final String separators;
+    private final int maxValueLength;
+
+    /**
+     * @param connectors     literal connectors, the longest one matching is used
+     * @param separators     characters separating pairs in addition to whitespace
+     * @param maxValueLength maximum length of a value
+     */
+    KeyValueLexer(List<String> connectors, String separators, int maxValueLength) {
+        final List<String> sorted = new ArrayList<>();
+        for (String connector : connectors) {
+            if (!connector.isEmpty()) sorted.add(connector);
+        }
+        sorted.sort(Comparator.comparingInt(String::length).reversed());
+        this.connectors = sorted.toArray(new String[0]);
+        this.separators = separators;
+        this.maxValueLength = maxValueLength;
+    }
+
+    /**
+     * @param connectors comma separated literal connectors
+     */
+    static KeyValueLexer of(String connectors, String separators, int maxValueLength) {
+        final List<String> list = new ArrayList<>();
+        for (String connector : connectors.split(",")) {
+            list.add(connector.trim());
+        }
+        return new KeyValueLexer(list, separators == null ? "" : separators, maxValueLength);
+    }
+
+    void lex(CharSequence src, int start, int end, PairSink sink) {
+        final Pair pair = new Pair();
+        int keyStart = -1;
+        int keyEnd = -1;
+        int i = start;
+        while (i < end) {
+            final char c = src.charAt(i);
+            if (isBoundary(c)) {
+                // whitespace keeps the key for a connector after it, a separator drops it
+                if (!Character.isWhitespace(c)) keyStart = -1;
+                i++;
+                continue;
+            }
+            final int connector = connectorAt(src, i, end);
+            if (connector > 0) {
+                if (keyStart < 0) {
+                    i += connector;
+                    continue;
+                }
+                pair.keyStart = keyStart;
+                pair.keyEnd = keyEnd;
+                pair.connectorStart = i;
+                pair.connectorEnd = i + connector;
+                value(src, pair.connectorEnd, end, pair);
+                sink.pair(src, pair);
+                i = pair.next;
+                keyStart = -1;
+                continue;
+            }
+            if (c == '"') {
+                final int close = closingQuote(src, i + 1, Math.min(end, i + 1 + maxValueLength));
+                if (close >= 0) {
+                    keyStart = i + 1;
+                    keyEnd = close;
+                    i = close + 1;
+                    continue;
+                }
+            }
+            // plain token, a key if a connector follows
+            int j = i + 1;
+            while (j < end && !isBoundary(src.charAt(j)) && connectorAt(src, j, end) == 0) j++;
+            keyStart = i;
+            keyEnd = j;
+            i = j;
+        }
+    }
+
+    /**
+     * Reads the value after the connector ending at pos into the value positions of the pair.
+     */
+    void value(CharSequence src, int pos, int end, Pair pair) {
+        int start = pos;
+        while (start < end && Character.isWhitespace(src.charAt(start))) start++;
+        if (start > pos && isKey(src, start, end)) {
+            start = pos;
+        }
+        if (start < end && src.charAt(start) == '"') {
+            final int close = closingQuote(src, start + 1, Math.min(end, start + 1 + maxValueLength));
+            if (close >= 0) {
+                pair.valueStart = start + 1;
+                pair.valueEnd = close;
+                pair.next = close + 1;
+                return;
+            }
+        }
+        int tokenEnd = start;
+        while (tokenEnd < end && !isBoundary(src.charAt(tokenEnd))) tokenEnd++;
+        pair.valueStart = start;
+        pair.valueEnd = tokenEnd - start > maxValueLength ? start + maxValueLength : tokenEnd;
+        pair.next = tokenEnd;
+    }
+
+    /**
+     * @return true if a connector follows the token at pos, after optional whitespace
+     */
+    private boolean isKey(CharSequence src, int pos, int end) {
+        int i = pos;
+        while (i < end && !isBoundary(src.charAt(i))) {
+            if (connectorAt(src, i, end) > 0) return true;
+            i++;
+        }
+        while (i < end && Character.isWhitespace(src.charAt(i))) i++;
+        return i < end && connectorAt(src, i, end) > 0;
+    }
+
+    /**
+     * @return length of the longest connector
+     */
+    int maxConnectorLength() {
+        return connectors.length == 0 ? 0 : connectors[0].length();
+    }
+
+    private boolean isBoundary(char c) {
+        return Character.isWhitespace(c) || separators.indexOf(c) >= 0;
+    }
+
+    /**
+     * @return length of the connector at the position, 0 if none
+     */
+    int connectorAt(CharSequence src, int pos, int end) {
+        for (String connector : connectors) {
+            final int length = connector.length();
+            if (pos + length > end || src.charAt(pos) != connector.charAt(0)) continue;
+            int k = 1;
+            while (k < length && src.charAt(pos + k) == connector.charAt(k)) k++;
+            if (k == length) return length;
+        }
+        return 0;
+    }
+
+    /**
+     * @return position of the quote closing a string starting at from, -1 if it is not closed before limit
+     */
+    private static int closingQuote(CharSequence src, int from, int limit) {
+        for (int i = from; i < limit; i++) {
+            final char c = src.charAt(i);
+            if (c == '\\') {
+                i++;
+            } else if (c == '"') {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,223 @@
+package com.isgneuro.nifi.tools;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.apache.nifi.processor.ProcessSession;
+import org.apache.nifi.serialization.SimpleRecordSchema;
+import org.apache.nifi.serialization.record.RecordField;
+import org.apache.nifi.serialization.record.RecordSchema;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Key sequences learned from the lines parsed by {@link KeyValueLexer}, per source of the lines.
+ *
+ * A template is the text of a line between its values: the text before the first value (the first key with its
+ * connector), the text between the values (separator, next key and connector) and the text after the last value.
+ * A line matches a template if it has the same text around values read by the lexer rules, so its pairs are found by
+ * comparing the text and the value is the only part scanned. The lexer finds the same pairs in a matching line.
+ *
+ * Only lines without quotes between the values and without other connectors are learned, the lexer may look past
+ * the text around the values for them. The last few templates of a source are kept, the most recent one first.
+ */
+final class KeyValueTemplates {
+    static final long MAX_SOURCES = 10000;
+    static final int TEMPLATES_PER_SOURCE = 4;
+
+    private final KeyValueLexer lexer;
+    private final Cache<String, Template[]> templates = CacheBuilder.newBuilder()
+            .maximumSize(MAX_SOURCES)
+            .build();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * Keys and fields of a line, with the schema of the fields made once.
+     */
+    static final class Template {
+        private final FieldNameCache.Naming naming;
+        // texts[k] ends with the connector of value k, texts[n] is the text after the last value
+        private final String[] texts;
+        private final int[] connectorLengths;
+        final String[] keys;
+        final RecordField[] fields;
+        final RecordSchema schema;
+
+        private Template(FieldNameCache.Naming naming, String[] texts, int[] connectorLengths, String[] keys, RecordField[] fields) {
+            this.naming = naming;
+            this.texts = texts;
+            this.connectorLengths = connectorLengths;
+            this.keys = keys;
+            this.fields = fields;
+            this.schema = new SimpleRecordSchema(Arrays.asList(fields));
+        }
+    }
+
+    /**
+     * Template matching a line with the positions of the values in the line.
+     */
+    static final class Match {
+        final Template template;
+        // start and end of each value
+        final int[] values;
+
+        private Match(Template template, int[] values) {
+            this.template = template;
+            this.values = values;
+        }
+    }
+
+    /**
+     * Pairs of a line passed to a sink, kept for learning the template of the line.
+     */
+    static final class Recorder implements KeyValueLexer.PairSink {
+        private final KeyValueLexer.PairSink sink;
+        // key start, key end, connector start, connector end, next of each pair
+        private int[] positions = new int[40];
+        private int size;
+
+        Recorder(KeyValueLexer.PairSink sink) {
+            this.sink = sink;
+        }
+
+        @Override
+        public void pair(CharSequence src, KeyValueLexer.Pair pair) {
+            if (size + 5 > positions.length) {
+                positions = Arrays.copyOf(positions, positions.length * 2);
+            }
+            positions[size++] = pair.keyStart;
+            positions[size++] = pair.keyEnd;
+            positions[size++] = pair.connectorStart;
+            positions[size++] = pair.connectorEnd;
+            positions[size++] = pair.next;
+            sink.pair(src, pair);
+        }
+    }
+
+    KeyValueTemplates(KeyValueLexer lexer) {
+        this.lexer = lexer;
+    }
+
+    /**
+     * @return the template of the source matching the whole src, null if none does
+     */
+    Match match(String source, FieldNameCache.Naming naming, CharSequence src) {
+        final Template[] candidates = templates.getIfPresent(source);
+        if (candidates != null) {
+            for (Template template : candidates) {
+                if (template.naming.equals(naming)) {
+                    final int[] values = match(template, src);
+                    if (values != null) {
+                        hits.increment();
+                        return new Match(template, values);
+                    }
+                }
+            }
+        }
+        misses.increment();
+        return null;
+    }
+
+    /**
+     * Learns the template of src from the pairs found in it by the lexer, if the line can be matched positionally.
+     */
+    void learn(String source, FieldNameCache.Naming naming, CharSequence src, Recorder recorder, FieldNameCache.Stats stats) {
+        final int n = recorder.size / 5;
+        if (n == 0) {
+            return;
+        }
+        final int[] p = recorder.positions;
+        final String[] texts = new String[n + 1];
+        final int[] connectorLengths = new int[n];
+        final String[] keys = new String[n];
+        final RecordField[] fields = new RecordField[n];
+        final Set<String> unique = new HashSet<>();
+        int pos = 0;
+        for (int k = 0; k < n; k++) {
+            final int keyStart = p[5 * k];
+            final int keyEnd = p[5 * k + 1];
+            final int connectorStart = p[5 * k + 2];
+            final int connectorEnd = p[5 * k + 3];
+            for (int i = pos; i < connectorStart; i++) {
+                if (src.charAt(i) == '"' || lexer.connectorAt(src, i, src.length()) > 0) {
+                    return;
+                }
+            }
+            keys[k] = src.subSequence(keyStart, keyEnd).toString();
+            if (!unique.add(keys[k])) {
+                return;
+            }
+            texts[k] = src.subSequence(pos, connectorEnd).toString();
+            connectorLengths[k] = connectorEnd - connectorStart;
+            fields[k] = FieldNameCache.field(keys[k], naming, stats);
+            pos = p[5 * k + 4];
+        }
+        texts[n] = src.subSequence(pos, src.length()).toString();
+        final Template template = new Template(naming, texts, connectorLengths, keys, fields);
+
+        final Template[] current = templates.getIfPresent(source);
+        final int kept = current == null ? 0 : Math.min(current.length, TEMPLATES_PER_SOURCE - 1);
+        final Template[] updated = new Template[kept + 1];
+        updated[0] = template;
+        if (kept > 0) System.arraycopy(current, 0, updated, 1, kept);
+        templates.put(source, updated);
+    }
+
+    void report(ProcessSession session) {
+        final long h = hits.sumThenReset();
+        final long m = misses.sumThenReset();
+        if (h > 0) session.adjustCounter("KV template hits", h, false);
+        if (m > 0) session.adjustCounter("KV template misses", m, false);
+    }
+
+    /**
+     * @return value start and end positions, null if src does not match the template
+     */
+    private int[] match(Template template, CharSequence src) {
+        final int end = src.length();
+        final int n = template.keys.length;
+        final int maxConnector = lexer.maxConnectorLength();
+        final int[] values = new int[2 * n];
+        final KeyValueLexer.Pair pair = new KeyValueLexer.Pair();
+        int pos = 0;
+        for (int k = 0; k < n; k++) {
+            final String text = template.texts[k];
+            if (!regionMatches(src, pos, text)) {
+                return null;
+            }
+            final int connectorEnd = pos + text.length();
+            final int connectorStart = connectorEnd - template.connectorLengths[k];
+            // the lexer looks past the text for connectors starting near its end
+            for (int i = Math.max(pos, connectorEnd - maxConnector + 1); i < connectorStart; i++) {
+                if (lexer.connectorAt(src, i, end) > 0) {
+                    return null;
+                }
+            }
+            if (lexer.connectorAt(src, connectorStart, end) != template.connectorLengths[k]) {
+                return null;
+            }
+            lexer.value(src, connectorEnd, end, pair);
+            values[2 * k] = pair.valueStart;
+            values[2 * k + 1] = pair.valueEnd;
+            pos = pair.next;
+        }
+        final String tail = template.texts[n];
+        return pos + tail.length() == end && regionMatches(src, pos, tail) ? values : null;
+    }
+
+    private static boolean regionMatches(CharSequence src, int pos, String text) {
+        final int length = text.length();
+        if (pos + length > src.length()) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (src.charAt(pos + i) != text.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
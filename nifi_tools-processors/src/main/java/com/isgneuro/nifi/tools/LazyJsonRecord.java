@@ -0,0 +1,151 @@
+package com.isgneuro.nifi.tools;
+
+import org.apache.nifi.serialization.record.MapRecord;
+import org.apache.nifi.serialization.record.Record;
+import org.apache.nifi.serialization.record.RecordField;
+import org.apache.nifi.serialization.record.RecordFieldType;
+import org.apache.nifi.serialization.record.RecordSchema;
+
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Record with deferred decoding of parsed JSON values, which are held as positions in the source text,
+ * see {@link StructuralJsonScanner#lazyValue(boolean)}.
+ *
+ * Only the decoding is deferred: every field is still named, typed from the structural index and added to the schema
+ * while parsing. A string or number is decoded only when the value of its field is read, then it replaces
+ * the position, so values of fields dropped before writing are never decoded.
+ */
+class LazyJsonRecord extends MapRecord {
+
+    /**
+     * Position of a JSON string or number in the source.
+     */
+    static final class Value {
+        static final int STRING = 0;
+        static final int INTEGRAL = 1;
+        static final int DECIMAL = 2;
+
+        private final CharSequence src;
+        private final int start;
+        private final int end;
+        private final int kind;
+        private final boolean typed;
+        private final boolean escapeControlChars;
+
+        Value(CharSequence src, int start, int end, int kind, boolean typed, boolean escapeControlChars) {
+            this.src = src;
+            this.start = start;
+            this.end = end;
+            this.kind = kind;
+            this.typed = typed;
+            this.escapeControlChars = escapeControlChars;
+        }
+
+        /**
+         * @return type of the value, the same as of the decoded value
+         */
+        RecordFieldType fieldType() {
+            if (!typed || kind == STRING) {
+                return RecordFieldType.STRING;
+            }
+            return kind == DECIMAL ? RecordFieldType.DOUBLE : fitsLong() ? RecordFieldType.LONG : RecordFieldType.STRING;
+        }
+
+        /**
+         * @return the value as written by the JSON parse processors
+         */
+        Object get() {
+            if (kind == STRING) {
+                return StructuralJsonScanner.decode(src, start, end, escapeControlChars);
+            }
+            final String text = src.subSequence(start, end).toString();
+            if (!typed) {
+                return new BigDecimal(text).toString();
+            }
+            if (kind == DECIMAL) {
+                return Double.parseDouble(text);
+            }
+            return fitsLong() ? (Object) Long.parseLong(text) : text;
+        }
+
+        private boolean fitsLong() {
+            // up to 18 digits always fit
+            if (end - start < 19) {
+                return true;
+            }
+            try {
+                Long.parseLong(src.subSequence(start, end).toString());
+                return true;
+            } catch (NumberFormatException e) {
+                return false;
+            }
+        }
+
+        @Override
+        public String toString() {
+            return String.valueOf(get());
+        }
+    }
+
+    LazyJsonRecord(RecordSchema schema, Map<String, Object> values) {
+        super(schema, values);
+    }
+
+    /**
+     * Copy of the record, values are set to it without type checks.
+     */
+    LazyJsonRecord(Record record) {
+        this(record.getSchema(), new HashMap<>(valuesOf(record)));
+    }
+
+    /**
+     * @return values of the record by field name, lazy values are not decoded
+     */
+    static Map<String, Object> valuesOf(Record record) {
+        return record instanceof LazyJsonRecord ? ((LazyJsonRecord) record).rawValues() : record.toMap();
+    }
+
+    @Override
+    public Object getValue(String fieldName) {
+        return resolve(fieldName, super.getValue(fieldName));
+    }
+
+    @Override
+    public Object getValue(RecordField field) {
+        return resolve(field.getFieldName(), super.getValue(field));
+    }
+
+    @Override
+    public Object[] getValues() {
+        resolveAll();
+        return super.getValues();
+    }
+
+    @Override
+    public Map<String, Object> toMap() {
+        resolveAll();
+        return super.toMap();
+    }
+
+    private Map<String, Object> rawValues() {
+        return super.toMap();
+    }
+
+    private Object resolve(String fieldName, Object value) {
+        if (!(value instanceof Value)) {
+            return value;
+        }
+        final Object decoded = ((Value) value).get();
+        super.setValue(fieldName, decoded);
+        return decoded;
+    }
+
+    private void resolveAll() {
+        for (RecordField field : getSchema().getFields()) {
+            getValue(field);
+        }
+    }
+}
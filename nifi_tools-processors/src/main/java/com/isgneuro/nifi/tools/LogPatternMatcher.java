@@ -0,0 +1,441 @@
+package com.isgneuro.nifi.tools;
+
+import org.apache.nifi.components.ValidationResult;
+import org.apache.nifi.components.Validator;
+import org.apache.nifi.serialization.record.RecordFieldType;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Named log patterns compiled into one automaton, an alternative to a chain of regular expressions.
+ *
+ * A pattern is literal text with %{TYPE:name} elements, %{TYPE} matches without a field. A run of spaces in the pattern
+ * matches one or more spaces or tabs. A pattern matches the whole value, %{GREEDYDATA:rest} at the end takes the rest.
+ * Types: INT (long), NUMBER (double), WORD, NOTSPACE, IPV4, IP, QS (quoted string, the field is the text between
+ * the quotes with the backslash escapes removed, see {@link #unescape}), DATA (shortest text), GREEDYDATA (longest
+ * text), SPACE (optional whitespace).
+ *
+ * All the patterns are simulated together in one pass over the value without backtracking (Pike VM), so the matching
+ * time is linear in the length of the value times the size of the patterns. If several patterns match, the first one
+ * is used, and the fields of a pattern are the ones a backtracking regular expression would give.
+ * The thread lists of the simulation are kept per calling thread and reused by the next match.
+ */
+final class LogPatternMatcher {
+
+    static final Validator VALIDATOR = (subject, value, context) -> {
+        String reason = null;
+        try {
+            new LogPatternMatcher(Collections.singletonList(value));
+        } catch (IllegalArgumentException e) {
+            reason = e.getMessage();
+        }
+        return new ValidationResult.Builder().subject(subject).input(value).explanation(reason).valid(reason == null).build();
+    };
+
+    private static final int CHAR = 0;
+    private static final int CLASS = 1;
+    private static final int SPLIT = 2;
+    private static final int JMP = 3;
+    private static final int SAVE = 4;
+    private static final int MATCH = 5;
+
+    private static final int DIGIT = 0;
+    private static final int SIGN = 1;
+    private static final int WORD = 2;
+    private static final int NOT_SPACE = 3;
+    private static final int SPACE = 4;
+    private static final int BLANK = 5;
+    private static final int ANY = 6;
+    private static final int IP_CHAR = 7;
+    private static final int QUOTED = 8;
+
+    /**
+     * Field of a pattern.
+     */
+    static final class Capture {
+        final String name;
+        final RecordFieldType type;
+        // the value is a quoted string with backslash escapes
+        final boolean quoted;
+
+        private Capture(String name, RecordFieldType type, boolean quoted) {
+            this.name = name;
+            this.type = type;
+            this.quoted = quoted;
+        }
+    }
+
+    /**
+     * Pattern matching a value with the start and end of each field in the value.
+     */
+    static final class Match {
+        final int pattern;
+        // start and end of each capture of the pattern
+        final int[] slots;
+
+        private Match(int pattern, int[] slots) {
+            this.pattern = pattern;
+            this.slots = slots;
+        }
+    }
+
+    private final List<List<Capture>> captures = new ArrayList<>();
+    private int[] ops = new int[64];
+    private int[] arg1 = new int[64];
+    private int[] arg2 = new int[64];
+    private int size;
+    private int slotCount;
+    // slots of the first thread, never written as a save copies them
+    private final int[] noSlots;
+    private final ThreadLocal<Scratch> scratch = ThreadLocal.withInitial(() -> new Scratch(size));
+
+    /**
+     * @param patterns patterns in the order they are tried
+     * @throws IllegalArgumentException if a pattern cannot be compiled
+     */
+    LogPatternMatcher(List<String> patterns) {
+        // the patterns are alternatives of the first instructions, the first pattern preferred
+        final int[] starts = new int[patterns.size()];
+        final int chain = size;
+        for (int p = 0; p + 1 < patterns.size(); p++) {
+            emit(SPLIT, -1, size + 1);
+        }
+        for (int p = 0; p < patterns.size(); p++) {
+            starts[p] = size;
+            final List<Capture> fields = compile(patterns.get(p));
+            emit(MATCH, p, 0);
+            captures.add(Collections.unmodifiableList(fields));
+            slotCount = Math.max(slotCount, 2 * fields.size());
+        }
+        for (int p = 0; p + 1 < patterns.size(); p++) {
+            arg1[chain + p] = starts[p];
+        }
+        if (patterns.size() > 1) {
+            arg2[chain + patterns.size() - 2] = starts[patterns.size() - 1];
+        }
+        noSlots = new int[slotCount];
+    }
+
+    /**
+     * @return fields of the pattern, the slots of field k are 2k and 2k+1
+     */
+    List<Capture> captures(int pattern) {
+        return captures.get(pattern);
+    }
+
+    /**
+     * @return the first pattern matching the whole src, null if none does
+     */
+    Match match(CharSequence src) {
+        if (size == 0) {
+            return null;
+        }
+        final int end = src.length();
+        final Scratch scratch = this.scratch.get();
+        Threads current = scratch.current;
+        Threads next = scratch.next;
+        final int[] seen = scratch.seen;
+        current.count = 0;
+        add(current, seen, scratch.nextGeneration(), 0, noSlots, 0);
+        for (int pos = 0; pos < end && current.count > 0; pos++) {
+            final char c = src.charAt(pos);
+            final int generation = scratch.nextGeneration();
+            next.count = 0;
+            for (int t = 0; t < current.count; t++) {
+                final int pc = current.pcs[t];
+                final boolean step;
+                switch (ops[pc]) {
+                    case CHAR:
+                        step = c == arg1[pc];
+                        break;
+                    case CLASS:
+                        step = matches(arg1[pc], c);
+                        break;
+                    default:
+                        step = false;
+                }
+                if (step) {
+                    add(next, seen, generation, pc + 1, current.slots[t], pos + 1);
+                }
+            }
+            final Threads swap = current;
+            current = next;
+            next = swap;
+        }
+        Match match = null;
+        for (int t = 0; t < current.count && match == null; t++) {
+            final int pc = current.pcs[t];
+            if (ops[pc] == MATCH) {
+                match = new Match(arg1[pc], current.slots[t]);
+            }
+        }
+        // the slots of the threads are not kept for the next match
+        Arrays.fill(current.slots, 0, current.count, null);
+        Arrays.fill(next.slots, 0, next.count, null);
+        return match;
+    }
+
+    /**
+     * @return the text between start and end with each backslash escape replaced by the escaped char
+     */
+    static String unescape(CharSequence src, int start, int end) {
+        int i = start;
+        while (i < end && src.charAt(i) != '\\') i++;
+        if (i == end) {
+            return src.subSequence(start, end).toString();
+        }
+        final StringBuilder text = new StringBuilder(end - start).append(src, start, i);
+        for (; i < end; i++) {
+            final char c = src.charAt(i);
+            if (c == '\\' && i + 1 < end) {
+                text.append(src.charAt(++i));
+            } else {
+                text.append(c);
+            }
+        }
+        return text.toString();
+    }
+
+    /**
+     * Thread lists and visited marks of the matches of one calling thread.
+     */
+    private static final class Scratch {
+        final Threads current;
+        final Threads next;
+        // generation of the step in which a pc was last added
+        final int[] seen;
+        int generation;
+
+        Scratch(int size) {
+            current = new Threads(size);
+            next = new Threads(size);
+            seen = new int[size];
+        }
+
+        int nextGeneration() {
+            if (generation == Integer.MAX_VALUE) {
+                Arrays.fill(seen, 0);
+                generation = 0;
+            }
+            return ++generation;
+        }
+    }
+
+    /**
+     * Threads waiting for the next char in the order of their priority.
+     */
+    private static final class Threads {
+        final int[] pcs;
+        final int[][] slots;
+        int count;
+
+        Threads(int size) {
+            pcs = new int[size];
+            slots = new int[size][];
+        }
+    }
+
+    /**
+     * Adds the thread at pc following the jumps, a pc already reached by a thread preferred in this step is skipped.
+     */
+    private void add(Threads threads, int[] seen, int generation, int pc, int[] slots, int pos) {
+        if (seen[pc] == generation) {
+            return;
+        }
+        seen[pc] = generation;
+        switch (ops[pc]) {
+            case JMP:
+                add(threads, seen, generation, arg1[pc], slots, pos);
+                break;
+            case SPLIT:
+                add(threads, seen, generation, arg1[pc], slots, pos);
+                add(threads, seen, generation, arg2[pc], slots, pos);
+                break;
+            case SAVE:
+                // slots are shared by the threads until one of them saves a position
+                final int[] saved = slots.clone();
+                saved[arg1[pc]] = pos;
+                add(threads, seen, generation, pc + 1, saved, pos);
+                break;
+            default:
+                threads.pcs[threads.count] = pc;
+                threads.slots[threads.count] = slots;
+                threads.count++;
+        }
+    }
+
+    private static boolean matches(int charClass, char c) {
+        switch (charClass) {
+            case DIGIT:
+                return c >= '0' && c <= '9';
+            case SIGN:
+                return c == '+' || c == '-';
+            case WORD:
+                return c >= '0' && c <= '9' || c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c == '_';
+            case NOT_SPACE:
+                return !Character.isWhitespace(c);
+            case SPACE:
+                return Character.isWhitespace(c);
+            case BLANK:
+                return c == ' ' || c == '\t';
+            case IP_CHAR:
+                return c >= '0' && c <= '9' || c >= 'a' && c <= 'f' || c >= 'A' && c <= 'F' || c == '.' || c == ':';
+            case QUOTED:
+                return c != '"' && c != '\\';
+            default:
+                return true;
+        }
+    }
+
+    private List<Capture> compile(String pattern) {
+        final List<Capture> fields = new ArrayList<>();
+        final Set<String> names = new HashSet<>();
+        int i = 0;
+        while (i < pattern.length()) {
+            final char c = pattern.charAt(i);
+            if (pattern.startsWith("%{", i)) {
+                final int close = pattern.indexOf('}', i);
+                if (close < 0) {
+                    throw new IllegalArgumentException("%{ at " + i + " is not closed");
+                }
+                final String[] spec = pattern.substring(i + 2, close).split(":", -1);
+                if (spec.length > 2 || spec.length == 2 && spec[1].isEmpty()) {
+                    throw new IllegalArgumentException("Expected %{TYPE} or %{TYPE:name} at " + i);
+                }
+                final String name = spec.length == 2 ? spec[1] : null;
+                if (name != null && !names.add(name)) {
+                    throw new IllegalArgumentException("Field " + name + " is repeated");
+                }
+                final int slot = name != null ? 2 * fields.size() : -1;
+                final RecordFieldType type = element(spec[0], slot);
+                if (name != null) {
+                    fields.add(new Capture(name, type, spec[0].equals("QS")));
+                }
+                i = close + 1;
+            } else if (c == ' ') {
+                while (i < pattern.length() && pattern.charAt(i) == ' ') i++;
+                plus(BLANK);
+            } else {
+                emit(CHAR, c, 0);
+                i++;
+            }
+        }
+        return fields;
+    }
+
+    /**
+     * Emits the instructions of an element saving its start and end to the slots from slot, not saved if slot is -1.
+     *
+     * @return type of the field
+     */
+    private RecordFieldType element(String type, int slot) {
+        if (type.equals("QS")) {
+            emit(CHAR, '"', 0);
+            save(slot);
+            // the text between the quotes, a backslash escapes the next char
+            final int loop = emit(SPLIT, size + 1, -1);
+            emit(SPLIT, size + 1, size + 3);
+            emit(CLASS, QUOTED, 0);
+            emit(JMP, loop, 0);
+            emit(CHAR, '\\', 0);
+            emit(CLASS, ANY, 0);
+            emit(JMP, loop, 0);
+            arg2[loop] = size;
+            save(slot < 0 ? -1 : slot + 1);
+            emit(CHAR, '"', 0);
+            return RecordFieldType.STRING;
+        }
+        save(slot);
+        final RecordFieldType fieldType;
+        switch (type) {
+            case "INT":
+                optional(SIGN);
+                plus(DIGIT);
+                fieldType = RecordFieldType.LONG;
+                break;
+            case "NUMBER":
+                optional(SIGN);
+                plus(DIGIT);
+                final int fraction = emit(SPLIT, size + 1, -1);
+                emit(CHAR, '.', 0);
+                plus(DIGIT);
+                arg2[fraction] = size;
+                fieldType = RecordFieldType.DOUBLE;
+                break;
+            case "WORD":
+                plus(WORD);
+                fieldType = RecordFieldType.STRING;
+                break;
+            case "NOTSPACE":
+                plus(NOT_SPACE);
+                fieldType = RecordFieldType.STRING;
+                break;
+            case "IPV4":
+                for (int octet = 0; octet < 4; octet++) {
+                    if (octet > 0) emit(CHAR, '.', 0);
+                    emit(CLASS, DIGIT, 0);
+                    optional(DIGIT);
+                    optional(DIGIT);
+                }
+                fieldType = RecordFieldType.STRING;
+                break;
+            case "IP":
+                plus(IP_CHAR);
+                fieldType = RecordFieldType.STRING;
+                break;
+            case "DATA":
+                star(ANY, false);
+                fieldType = RecordFieldType.STRING;
+                break;
+            case "GREEDYDATA":
+                star(ANY, true);
+                fieldType = RecordFieldType.STRING;
+                break;
+            case "SPACE":
+                star(SPACE, true);
+                fieldType = RecordFieldType.STRING;
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown type " + type);
+        }
+        save(slot < 0 ? -1 : slot + 1);
+        return fieldType;
+    }
+
+    private void save(int slot) {
+        if (slot >= 0) emit(SAVE, slot, 0);
+    }
+
+    private void optional(int charClass) {
+        emit(SPLIT, size + 1, size + 2);
+        emit(CLASS, charClass, 0);
+    }
+
+    private void plus(int charClass) {
+        final int loop = emit(CLASS, charClass, 0);
+        emit(SPLIT, loop, size + 1);
+    }
+
+    private void star(int charClass, boolean greedy) {
+        final int loop = greedy ? emit(SPLIT, size + 1, size + 3) : emit(SPLIT, size + 3, size + 1);
+        emit(CLASS, charClass, 0);
+        emit(JMP, loop, 0);
+    }
+
+    private int emit(int op, int a, int b) {
+        if (size == ops.length) {
+            ops = Arrays.copyOf(ops, size * 2);
+            arg1 = Arrays.copyOf(arg1, size * 2);
+            arg2 = Arrays.copyOf(arg2, size * 2);
+        }
+        ops[size] = op;
+        arg1[size] = a;
+        arg2[size] = b;
+        return size++;
+    }
+}
@@ -0,0 +1,78 @@
+package com.isgneuro.nifi.tools;
+
+import java.util.Arrays;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Finds the boundaries of concatenated JSON documents in one pass, tracking the bracket depth outside of strings.
+ *
+ * The text between two documents is a separator only if the whole of it matches the separator regex,
+ * which is checked on that text alone, so the regex never runs over the documents.
+ */
+class MultiJsonSplitter {
+    private final Pattern separator;
+
+    MultiJsonSplitter(Pattern separator) {
+        this.separator = separator;
+    }
+
+    /**
+     * @return (start, end) pairs of the separators after the document starting at start,
+     * in the form expected by {@link JsonCharSequenceReader}, empty for a single document
+     */
+    int[] split(CharSequence json, int start) {
+        int[] separators = JsonCharSequenceReader.NO_SEPARATORS;
+        int count = 0;
+        Matcher matcher = null;
+        int depth = 0;
+        boolean inString = false;
+        boolean escaped = false;
+        final int length = json.length();
+        for (int i = start; i < length; i++) {
+            final char c = json.charAt(i);
+            if (inString) {
+                if (escaped) {
+                    escaped = false;
+                } else if (c == '\\') {
+                    escaped = true;
+                } else if (c == '"') {
+                    inString = false;
+                }
+                continue;
+            }
+            if (c == '"') {
+                inString = true;
+            } else if (c == '{' || c == '[') {
+                depth++;
+            } else if ((c == '}' || c == ']') && --depth == 0) {
+                final int gapStart = i + 1;
+                int next = gapStart;
+                while (next < length && json.charAt(next) != '{' && json.charAt(next) != '[') {
+                    next++;
+                }
+                if (next == length) {
+                    break;
+                }
+                if (matcher == null) {
+                    matcher = separator.matcher(json);
+                    matcher.useTransparentBounds(true);
+                }
+                matcher.region(gapStart, next);
+                if (!matcher.matches()) {
+                    // not a sequence of documents, left to the parser to report
+                    break;
+                }
+                if (count == separators.length) {
+                    separators = Arrays.copyOf(separators, Math.max(8, count * 2));
+                }
+                separators[count++] = gapStart;
+                separators[count++] = next;
+                i = next - 1;
+            } else if (depth < 0) {
+                break;
+            }
+        }
+        return count == separators.length ? separators : Arrays.copyOf(separators, count);
+    }
+}
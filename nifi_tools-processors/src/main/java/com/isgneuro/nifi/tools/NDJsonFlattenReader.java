@@ -0,0 +1,106 @@
+package com.isgneuro.nifi.tools;
+
+import org.apache.nifi.annotation.documentation.CapabilityDescription;
+import org.apache.nifi.annotation.documentation.Tags;
+import org.apache.nifi.annotation.lifecycle.OnEnabled;
+import org.apache.nifi.components.AllowableValue;
+import org.apache.nifi.components.PropertyDescriptor;
+import org.apache.nifi.controller.AbstractControllerService;
+import org.apache.nifi.controller.ConfigurationContext;
+import org.apache.nifi.expression.ExpressionLanguageScope;
+import org.apache.nifi.logging.ComponentLog;
+import org.apache.nifi.processor.util.StandardValidators;
+import org.apache.nifi.serialization.RecordReader;
+import org.apache.nifi.serialization.RecordReaderFactory;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+@Tags({"json", "ndjson", "jsonl", "flatten", "record", "reader", "parser"})
+@CapabilityDescription("Reads newline-delimited JSON and returns every line as a flattened record with the field names of JSONSParseRecord. "
+    + "Each record has the fields of its own line. The schema of the reader is inferred from the first records, "
+    + "fields first seen after them are added as the records are read.")
+public class NDJsonFlattenReader extends AbstractControllerService implements RecordReaderFactory {
+
+    static final PropertyDescriptor FIELD_PREFIX = new PropertyDescriptor.Builder()
+            .name("field_prefix")
+            .displayName("Field name prefix")
+            .description("Prefix added to the flattened field names, e.g. json.")
+            .expressionLanguageSupported(ExpressionLanguageScope.NONE)
+            .addValidator(StandardValidators.NON_EMPTY_VALIDATOR)
+            .required(false)
+            .build();
+
+    static final AllowableValue KEEP_RAW_SET = new AllowableValue("true","true",
+            "Keep the line as _raw field");
+    static final AllowableValue KEEP_RAW_UNSET = new AllowableValue("false","false",
+            "Only the flattened fields");
+
+    static final PropertyDescriptor KEEP_RAW = new PropertyDescriptor.Builder()
+            .name("keep_raw")
+            .displayName("Keep raw")
+            .description("Keep the original line in the " + NDJsonFlattenRecordReader.RAW_FIELD_NAME + " string field")
+            .expressionLanguageSupported(ExpressionLanguageScope.NONE)
+            .allowableValues(KEEP_RAW_SET,KEEP_RAW_UNSET)
+            .defaultValue(KEEP_RAW_UNSET.getValue())
+            .required(true)
+            .build();
+
+    static final PropertyDescriptor SCHEMA_SAMPLE = new PropertyDescriptor.Builder()
+            .name("schema_sample")
+            .displayName("Schema inference records")
+            .description("Number of records read ahead to infer the schema of the reader. Fields first seen after them "
+                    + "are missing from the schema of writers which take it from the reader before reading the records")
+            .defaultValue("1000")
+            .expressionLanguageSupported(ExpressionLanguageScope.NONE)
+            .addValidator(StandardValidators.POSITIVE_INTEGER_VALIDATOR)
+            .required(true)
+            .build();
+
+    private volatile JsonEventFlattener flattener;
+    private volatile String fieldPrefix;
+    private volatile boolean removeIlchar;
+    private volatile boolean typedValues;
+    private volatile boolean widenConflicts;
+    private volatile boolean keepRaw;
+    private volatile int sampleRecords;
+
+    @Override
+    protected List<PropertyDescriptor> getSupportedPropertyDescriptors() {
+        final List<PropertyDescriptor> properties = new ArrayList<>();
+        properties.add(JSONSParseRecord.SPLUNK_STYLE);
+        properties.add(JSONSParseRecord.MAXDEPTH);
+        properties.add(JSONSParseRecord.REMOVE_ILCHAR);
+        properties.add(JSONSParseRecord.OVERDEPTHASTEXT);
+        properties.add(JSONParseRecord.INCLUDE_PATHS);
+        properties.add(JSONParseRecord.TYPED_VALUES);
+        properties.add(JSONParseRecord.TYPE_CONFLICT);
+        properties.add(FIELD_PREFIX);
+        properties.add(KEEP_RAW);
+        properties.add(SCHEMA_SAMPLE);
+        return properties;
+    }
+
+    @OnEnabled
+    public void onEnabled(final ConfigurationContext context) {
+        final boolean splunkStyle = context.getProperty(JSONSParseRecord.SPLUNK_STYLE).getValue().equals(JSONSParseRecord.SPLUNK_SET.getValue());
+        final int maxdepth = Integer.parseInt(context.getProperty(JSONSParseRecord.MAXDEPTH).getValue());
+        final boolean overdepthastext = context.getProperty(JSONSParseRecord.OVERDEPTHASTEXT).getValue().equals(JSONSParseRecord.OVERDEPTHASTEXT_SET.getValue());
+        final JsonPathTrie.Node includePaths = context.getProperty(JSONParseRecord.INCLUDE_PATHS).isSet()
+                ? JsonPathTrie.compile(context.getProperty(JSONParseRecord.INCLUDE_PATHS).getValue()) : null;
+        this.typedValues = context.getProperty(JSONParseRecord.TYPED_VALUES).getValue().equals(JSONParseRecord.TYPED_VALUES_SET.getValue());
+        this.widenConflicts = context.getProperty(JSONParseRecord.TYPE_CONFLICT).getValue().equals(JSONParseRecord.TYPE_CONFLICT_STRING.getValue());
+        this.removeIlchar = context.getProperty(JSONSParseRecord.REMOVE_ILCHAR).getValue().equals(JSONSParseRecord.ILCHAR_SET.getValue());
+        this.fieldPrefix = context.getProperty(FIELD_PREFIX).isSet() ? context.getProperty(FIELD_PREFIX).getValue() : "";
+        this.keepRaw = context.getProperty(KEEP_RAW).getValue().equals(KEEP_RAW_SET.getValue());
+        this.sampleRecords = Integer.parseInt(context.getProperty(SCHEMA_SAMPLE).getValue());
+        this.flattener = new JsonEventFlattener(splunkStyle, maxdepth, overdepthastext, includePaths, typedValues, false);
+    }
+
+    @Override
+    public RecordReader createRecordReader(final Map<String, String> variables, final InputStream in, final long inputLength, final ComponentLog logger) {
+        return new NDJsonFlattenRecordReader(in, flattener, fieldPrefix, removeIlchar, typedValues, widenConflicts, keepRaw, sampleRecords, logger);
+    }
+}
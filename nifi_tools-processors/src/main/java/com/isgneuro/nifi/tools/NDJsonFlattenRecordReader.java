@@ -0,0 +1,252 @@
+package com.isgneuro.nifi.tools;
+
+import org.apache.nifi.logging.ComponentLog;
+import org.apache.nifi.serialization.MalformedRecordException;
+import org.apache.nifi.serialization.RecordReader;
+import org.apache.nifi.serialization.SimpleRecordSchema;
+import org.apache.nifi.serialization.record.DataType;
+import org.apache.nifi.serialization.record.MapRecord;
+import org.apache.nifi.serialization.record.Record;
+import org.apache.nifi.serialization.record.RecordField;
+import org.apache.nifi.serialization.record.RecordFieldType;
+import org.apache.nifi.serialization.record.RecordSchema;
+import org.apache.nifi.serialization.record.type.ChoiceDataType;
+
+import javax.json.JsonException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads the lines of newline-delimited JSON from the UTF-8 bytes of the stream and flattens each line with
+ * {@link JsonEventFlattener} over {@link StructuralJsonScanner}, the line is decoded once and parsed in place.
+ *
+ * Blank lines are skipped, a line is parsed from its first { or [. A line which cannot be parsed gets
+ * the _JSON_parsing_error field after the fields parsed before the error, as in JSONSParseRecord.
+ *
+ * The schema of the reader is inferred from the first records, which are read ahead when it is asked for,
+ * fields first seen after them are added to the schema as they are read. A field read with values of different types
+ * is a CHOICE of them in the schema of the reader or STRING if type conflicts are widened.
+ */
+class NDJsonFlattenRecordReader implements RecordReader {
+    static final String RAW_FIELD_NAME = "_raw";
+    private static final RecordField RAW_FIELD = new RecordField(RAW_FIELD_NAME, RecordFieldType.STRING.getDataType(), true);
+
+    private final InputStream in;
+    private final JsonEventFlattener flattener;
+    private final String fieldPrefix;
+    private final boolean removeIlchar;
+    private final boolean typedValues;
+    private final boolean widenConflicts;
+    private final boolean keepRaw;
+    private final int sampleRecords;
+    private final ComponentLog logger;
+
+    // fields of the records read so far in the order they were first seen
+    private final Map<String, RecordField> seen = new LinkedHashMap<>();
+    // records read ahead to infer the schema
+    private final Deque<Record> sampled = new ArrayDeque<>();
+    private boolean inferred;
+
+    private byte[] buffer = new byte[65536];
+    private int pos;
+    private int limit;
+    private boolean eof;
+
+    NDJsonFlattenRecordReader(InputStream in, JsonEventFlattener flattener, String fieldPrefix, boolean removeIlchar,
+                              boolean typedValues, boolean widenConflicts, boolean keepRaw, int sampleRecords, ComponentLog logger) {
+        this.in = in;
+        this.flattener = flattener;
+        this.fieldPrefix = fieldPrefix;
+        this.removeIlchar = removeIlchar;
+        this.typedValues = typedValues;
+        this.widenConflicts = widenConflicts;
+        this.keepRaw = keepRaw;
+        this.sampleRecords = sampleRecords;
+        this.logger = logger;
+    }
+
+    /**
+     * Coercion and unknown fields do not apply, every record has the schema of its own fields.
+     */
+    @Override
+    public Record nextRecord(final boolean coerceTypes, final boolean dropUnknownFields) throws IOException {
+        return sampled.isEmpty() ? readRecord() : sampled.poll();
+    }
+
+    /**
+     * @return fields of the first records, read ahead at the first call, and of the records read after them,
+     * so writers taking the schema before reading get the fields of the sampled records
+     */
+    @Override
+    public RecordSchema getSchema() throws MalformedRecordException {
+        if (!inferred) {
+            inferred = true;
+            try {
+                for (int k = 0; k < sampleRecords; k++) {
+                    final Record record = readRecord();
+                    if (record == null) {
+                        break;
+                    }
+                    sampled.add(record);
+                }
+            } catch (IOException e) {
+                throw new MalformedRecordException("Cannot read the records to infer the schema", e);
+            }
+        }
+        final RecordSchema schema = Utils.withoutNullTypes(new SimpleRecordSchema(new ArrayList<>(seen.values())));
+        return widenConflicts ? Utils.widenChoicesToString(schema) : schema;
+    }
+
+    /**
+     * @return the record of the next line which is not blank, null at the end of the stream
+     */
+    private Record readRecord() throws IOException {
+        String line;
+        int start;
+        do {
+            line = nextLine();
+            if (line == null) {
+                return null;
+            }
+            start = firstNonBlank(line);
+        } while (start < 0);
+
+        final Map<String, RecordField> fields = new LinkedHashMap<>();
+        final Map<String, Object> values = new LinkedHashMap<>();
+        final int jsonStart = jsonStart(line, start);
+        if (jsonStart >= 0) {
+            final JsonStreamFlattener.FieldSink sink = (key, value) -> {
+                final Object v = typedValues || value == null ? value : value.toString();
+                final RecordFieldType type = typedValues || v == null ? Utils.fieldTypeOf(v) : RecordFieldType.STRING;
+                // the lookups are not reported, a controller service has no session to adjust the counters of
+                RecordField field = FieldNameCache.field(fieldPrefix + key, FieldNameCache.Naming.PLAIN, type, FieldNameCache.Stats.NONE);
+                if (v == null) {
+                    // a null has no type, the field keeps the type of the values read before
+                    field = seen.getOrDefault(field.getFieldName(), field);
+                }
+                // the last value of a duplicate key is kept at the place of the first one
+                fields.put(field.getFieldName(), field);
+                values.put(field.getFieldName(), v);
+            };
+            try {
+                flattener.flatten(new StructuralJsonScanner(line, jsonStart, line.length(), JsonCharSequenceReader.NO_SEPARATORS, removeIlchar),
+                        null, line, sink);
+            } catch (JsonException e) {
+                logger.error("Parsing Error:", e);
+                sink.field(JsonEventFlattener.PARSING_ERROR_KEY, e.getLocalizedMessage());
+            }
+        }
+        if (keepRaw) {
+            fields.put(RAW_FIELD_NAME, RAW_FIELD);
+            values.put(RAW_FIELD_NAME, line);
+        }
+        for (RecordField field : fields.values()) {
+            seen.merge(field.getFieldName(), field, NDJsonFlattenRecordReader::mergeFields);
+        }
+        return new MapRecord(new SimpleRecordSchema(new ArrayList<>(fields.values())), values);
+    }
+
+    /**
+     * @return the field of a null value gives way to a typed one, fields of different types are merged into a CHOICE
+     */
+    private static RecordField mergeFields(RecordField seen, RecordField next) {
+        final DataType seenType = seen.getDataType();
+        final DataType nextType = next.getDataType();
+        if (seenType.equals(nextType) || nextType.equals(Utils.NULL_VALUE_TYPE)) {
+            return seen;
+        }
+        if (seenType.equals(Utils.NULL_VALUE_TYPE)) {
+            return next;
+        }
+        final List<DataType> subTypes = new ArrayList<>();
+        if (seenType.getFieldType() == RecordFieldType.CHOICE) {
+            subTypes.addAll(((ChoiceDataType) seenType).getPossibleSubTypes());
+            if (subTypes.contains(nextType)) {
+                return seen;
+            }
+        } else {
+            subTypes.add(seenType);
+        }
+        subTypes.add(nextType);
+        return new RecordField(seen.getFieldName(), RecordFieldType.CHOICE.getChoiceDataType(subTypes), seen.isNullable());
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    /**
+     * @return the next line without the line break decoded from UTF-8, null at the end of the stream
+     */
+    private String nextLine() throws IOException {
+        int scanned = pos;
+        while (true) {
+            for (int i = scanned; i < limit; i++) {
+                if (buffer[i] == '\n') {
+                    final String line = decode(pos, i);
+                    pos = i + 1;
+                    return line;
+                }
+            }
+            if (eof) {
+                if (pos == limit) {
+                    return null;
+                }
+                final String line = decode(pos, limit);
+                pos = limit;
+                return line;
+            }
+            // the incomplete line is moved to the start of the buffer, which grows for long lines
+            if (pos > 0) {
+                System.arraycopy(buffer, pos, buffer, 0, limit - pos);
+                limit -= pos;
+                pos = 0;
+            }
+            if (limit == buffer.length) {
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+            }
+            scanned = limit;
+            final int n = in.read(buffer, limit, buffer.length - limit);
+            if (n < 0) {
+                eof = true;
+            } else {
+                limit += n;
+            }
+        }
+    }
+
+    private String decode(int from, int to) {
+        if (to > from && buffer[to - 1] == '\r') {
+            to--;
+        }
+        return new String(buffer, from, to - from, StandardCharsets.UTF_8);
+    }
+
+    private static int firstNonBlank(String line) {
+        for (int i = 0; i < line.length(); i++) {
+            if (!Character.isWhitespace(line.charAt(i))) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int jsonStart(String line, int from) {
+        for (int i = from; i < line.length(); i++) {
+            final char c = line.charAt(i);
+            if (c == '{' || c == '[') {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,121 @@
+package com.isgneuro.nifi.tools;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import org.apache.nifi.components.PropertyDescriptor;
+import org.apache.nifi.expression.ExpressionLanguageScope;
+import org.apache.nifi.processor.ProcessContext;
+import org.apache.nifi.processor.ProcessSession;
+import org.apache.nifi.processor.util.StandardValidators;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Flattened keys and values of recently parsed JSON texts of one processor, so identical payloads such as heartbeats
+ * are parsed once. The texts are looked up by a 64-bit murmur3 hash and compared on a hit, the least recently used
+ * results are evicted over the size.
+ *
+ * Only complete results are cached, the values are immutable strings, numbers and booleans.
+ * Field names are still made by FieldNameCache, so the result of a text is shared by fields with different naming.
+ */
+final class ParseResultCache {
+    private static final HashFunction HASH = Hashing.murmur3_128();
+
+    static final PropertyDescriptor PARSE_CACHE_SIZE = new PropertyDescriptor.Builder()
+            .name("parse_cache_size")
+            .displayName("Parse cache size")
+            .description("Number of recently parsed JSON texts whose flattened fields are kept and reused for an identical text "
+                    + "without parsing it. 0 disables the cache.")
+            .defaultValue("0")
+            .expressionLanguageSupported(ExpressionLanguageScope.NONE)
+            .addValidator(StandardValidators.NON_NEGATIVE_INTEGER_VALIDATOR)
+            .required(true)
+            .build();
+
+    private final Cache<Long, Result> cache;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    private static final class Result {
+        private final String text;
+        private final List<Map.Entry<String, Object>> fields;
+
+        Result(String text, List<Map.Entry<String, Object>> fields) {
+            this.text = text;
+            this.fields = fields;
+        }
+    }
+
+    ParseResultCache(int maxSize) {
+        this.cache = CacheBuilder.newBuilder()
+                .maximumSize(maxSize)
+                .build();
+    }
+
+    /**
+     * @return cache of the size of the processor, null if disabled
+     */
+    static ParseResultCache of(ProcessContext context) {
+        final int size = Integer.parseInt(context.getProperty(PARSE_CACHE_SIZE).getValue());
+        return size > 0 ? new ParseResultCache(size) : null;
+    }
+
+    /**
+     * @return keys and values of the text from start to end of src in the order of parsing, null if not cached
+     */
+    List<Map.Entry<String, Object>> get(CharSequence src, int start, int end) {
+        final Result result = cache.getIfPresent(hash(src, start, end));
+        if (result != null && sameText(result.text, src, start, end)) {
+            hits.increment();
+            return result.fields;
+        }
+        misses.increment();
+        return null;
+    }
+
+    /**
+     * Caches the flattened keys and values of the text from start to end of src, replacing a text with the same hash.
+     */
+    void put(CharSequence src, int start, int end, Iterable<Map.Entry<String, Object>> fields) {
+        final List<Map.Entry<String, Object>> copy = new ArrayList<>();
+        for (Map.Entry<String, Object> field : fields) {
+            copy.add(new AbstractMap.SimpleImmutableEntry<>(field.getKey(), field.getValue()));
+        }
+        cache.put(hash(src, start, end), new Result(src.subSequence(start, end).toString(), Collections.unmodifiableList(copy)));
+    }
+
+    void report(ProcessSession session) {
+        final long h = hits.sumThenReset();
+        final long m = misses.sumThenReset();
+        if (h > 0) session.adjustCounter("Parse cache hits", h, false);
+        if (m > 0) session.adjustCounter("Parse cache misses", m, false);
+    }
+
+    private static boolean sameText(String text, CharSequence src, int start, int end) {
+        if (text.length() != end - start) {
+            return false;
+        }
+        for (int i = start; i < end; i++) {
+            if (text.charAt(i - start) != src.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static long hash(CharSequence src, int start, int end) {
+        final Hasher hasher = HASH.newHasher();
+        for (int i = start; i < end; i++) {
+            hasher.putChar(src.charAt(i));
+        }
+        return hasher.hash().asLong();
+    }
+}
@@ -0,0 +1,237 @@
+package com.isgneuro.nifi.tools;
+
+import org.apache.nifi.annotation.behavior.EventDriven;
+import org.apache.nifi.annotation.behavior.InputRequirement;
+import org.apache.nifi.annotation.behavior.InputRequirement.Requirement;
+import org.apache.nifi.annotation.behavior.SideEffectFree;
+import org.apache.nifi.annotation.behavior.SupportsBatching;
+import org.apache.nifi.annotation.documentation.CapabilityDescription;
+import org.apache.nifi.annotation.documentation.Tags;
+import org.apache.nifi.annotation.lifecycle.OnScheduled;
+import org.apache.nifi.components.AllowableValue;
+import org.apache.nifi.components.PropertyDescriptor;
+import org.apache.nifi.components.ValidationContext;
+import org.apache.nifi.components.ValidationResult;
+import org.apache.nifi.expression.ExpressionLanguageScope;
+import org.apache.nifi.flowfile.FlowFile;
+import org.apache.nifi.processor.ProcessContext;
+import org.apache.nifi.processor.ProcessSession;
+import org.apache.nifi.processor.util.StandardValidators;
+import org.apache.nifi.serialization.SimpleRecordSchema;
+import org.apache.nifi.serialization.record.Record;
+import org.apache.nifi.serialization.record.RecordField;
+import org.apache.nifi.serialization.record.RecordFieldType;
+import org.apache.nifi.serialization.record.RecordSchema;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.LongAdder;
+
+@EventDriven
+@SideEffectFree
+@SupportsBatching
+@InputRequirement(Requirement.INPUT_REQUIRED)
+@Tags({"record", "log", "logs", "pattern", "grok", "syslog", "parse", "text"})
+@CapabilityDescription("Extracts fields from a text field of the records with a library of named patterns, e.g. syslog headers or access logs. "
+    + "Each user-defined Property is a pattern, the name of the Property is the name of the pattern. The patterns are compiled "
+    + "into one automaton which matches a value in a single pass without backtracking, the fields of the first matching pattern "
+    + "are added to the record. Records not matched by any pattern are not changed.")
+public class PatternParseRecord extends AbstractRecordProcessorWithSchemaUpdates {
+
+    static final PropertyDescriptor SOURCE_FIELD = new PropertyDescriptor.Builder()
+            .name("source_field")
+            .displayName("Source field")
+            .description("Name of the field matched by the patterns")
+            .defaultValue("_raw")
+            .expressionLanguageSupported(ExpressionLanguageScope.NONE)
+            .addValidator(StandardValidators.NON_EMPTY_VALIDATOR)
+            .required(true)
+            .build();
+
+    static final AllowableValue TYPED_VALUES_SET = new AllowableValue("true","true",
+            "INT fields as long, NUMBER fields as double");
+    static final AllowableValue TYPED_VALUES_UNSET = new AllowableValue("false","false",
+            "All fields as strings");
+
+    static final PropertyDescriptor TYPED_VALUES = new PropertyDescriptor.Builder()
+            .name("typed_values")
+            .displayName("Typed values")
+            .description("Write INT and NUMBER fields as long and double fields instead of strings. "
+                    + "Integers not fitting a long are written as strings")
+            .expressionLanguageSupported(ExpressionLanguageScope.NONE)
+            .allowableValues(TYPED_VALUES_SET,TYPED_VALUES_UNSET)
+            .defaultValue(TYPED_VALUES_SET.getValue())
+            .required(true)
+            .build();
+
+    static final PropertyDescriptor PATTERN_NAME_FIELD = new PropertyDescriptor.Builder()
+            .name("pattern_name_field")
+            .displayName("Pattern name field")
+            .description("Name of the field set to the name of the matching pattern, not set if empty")
+            .expressionLanguageSupported(ExpressionLanguageScope.NONE)
+            .addValidator(StandardValidators.NON_EMPTY_VALIDATOR)
+            .required(false)
+            .build();
+
+    private final FieldNameCache.Stats nameCacheStats = new FieldNameCache.Stats();
+    private final LongAdder records = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    private volatile LogPatternMatcher matcher;
+    private volatile List<Compiled> patterns;
+    private volatile String sourceField;
+
+    /**
+     * Fields of a pattern made once, with the schema of the fields.
+     */
+    private static final class Compiled {
+        final String name;
+        final RecordField[] fields;
+        // fields of quoted strings, unescaped
+        final boolean[] quoted;
+        final RecordField nameField;
+        final RecordSchema schema;
+        final LongAdder matches = new LongAdder();
+
+        Compiled(String name, RecordField[] fields, boolean[] quoted, RecordField nameField) {
+            this.name = name;
+            this.fields = fields;
+            this.quoted = quoted;
+            this.nameField = nameField;
+            this.schema = new SimpleRecordSchema(fieldList(fields, nameField));
+        }
+    }
+
+    @Override
+    protected List<PropertyDescriptor> getSupportedPropertyDescriptors() {
+        final List<PropertyDescriptor> properties = new ArrayList<>(super.getSupportedPropertyDescriptors());
+        properties.add(SOURCE_FIELD);
+        properties.add(TYPED_VALUES);
+        properties.add(PATTERN_NAME_FIELD);
+        return properties;
+    }
+
+    @Override
+    protected PropertyDescriptor getSupportedDynamicPropertyDescriptor(final String propertyDescriptorName) {
+        return new PropertyDescriptor.Builder()
+            .name(propertyDescriptorName)
+            .description("Pattern " + propertyDescriptorName)
+            .required(false)
+            .dynamic(true)
+            .expressionLanguageSupported(ExpressionLanguageScope.NONE)
+            .addValidator(LogPatternMatcher.VALIDATOR)
+            .build();
+    }
+
+    @Override
+    protected Collection<ValidationResult> customValidate(final ValidationContext validationContext) {
+        final boolean containsDynamic = validationContext.getProperties().keySet().stream().anyMatch(PropertyDescriptor::isDynamic);
+
+        if (containsDynamic) {
+            return Collections.emptyList();
+        }
+
+        return Collections.singleton(new ValidationResult.Builder()
+            .subject("User-defined Properties")
+            .valid(false)
+            .explanation("At least one pattern must be specified")
+            .build());
+    }
+
+    @OnScheduled
+    public void compilePatterns(final ProcessContext context) {
+        // the patterns are tried in the order of their names
+        final Map<String, String> library = new TreeMap<>();
+        for (final Map.Entry<PropertyDescriptor, String> property : context.getProperties().entrySet()) {
+            if (property.getKey().isDynamic()) {
+                library.put(property.getKey().getName(), property.getValue());
+            }
+        }
+        final boolean typedValues = context.getProperty(TYPED_VALUES).getValue().equals(TYPED_VALUES_SET.getValue());
+        final RecordField nameField = context.getProperty(PATTERN_NAME_FIELD).isSet()
+                ? FieldNameCache.field(context.getProperty(PATTERN_NAME_FIELD).getValue(), FieldNameCache.Naming.PLAIN, nameCacheStats)
+                : null;
+
+        final LogPatternMatcher matcher = new LogPatternMatcher(new ArrayList<>(library.values()));
+        final List<Compiled> patterns = new ArrayList<>();
+        for (String name : library.keySet()) {
+            final List<LogPatternMatcher.Capture> captures = matcher.captures(patterns.size());
+            final RecordField[] fields = new RecordField[captures.size()];
+            final boolean[] quoted = new boolean[captures.size()];
+            for (int k = 0; k < fields.length; k++) {
+                final LogPatternMatcher.Capture capture = captures.get(k);
+                final RecordFieldType type = typedValues ? capture.type : RecordFieldType.STRING;
+                fields[k] = FieldNameCache.field(capture.name, FieldNameCache.Naming.PLAIN, type, nameCacheStats);
+                quoted[k] = capture.quoted;
+            }
+            patterns.add(new Compiled(name, fields, quoted, nameField));
+        }
+        this.matcher = matcher;
+        this.patterns = patterns;
+        this.sourceField = context.getProperty(SOURCE_FIELD).getValue();
+    }
+
+    @Override
+    protected void updateCounters(final ProcessSession session) {
+        nameCacheStats.report(session);
+        final long total = records.sumThenReset();
+        final long m = misses.sumThenReset();
+        if (total > 0) session.adjustCounter("Pattern records", total, false);
+        if (m > 0) session.adjustCounter("Pattern misses", m, false);
+        for (Compiled pattern : patterns) {
+            final long matched = pattern.matches.sumThenReset();
+            if (matched > 0) session.adjustCounter("Pattern " + pattern.name + " matches", matched, false);
+            if (total > 0) this.getLogger().debug("Pattern {} match rate:{}", new Object[]{pattern.name, (double) matched / total});
+        }
+    }
+
+    @Override
+    protected Record process(Record record, final FlowFile flowFile, final ProcessContext context) {
+        final Object source = record.getValue(sourceField);
+        if (source == null) {
+            return record;
+        }
+        records.increment();
+        final String text = source.toString();
+        final LogPatternMatcher.Match match = matcher.match(text);
+        if (match == null) {
+            misses.increment();
+            return record;
+        }
+        final Compiled pattern = patterns.get(match.pattern);
+        pattern.matches.increment();
+
+        RecordField[] fields = pattern.fields;
+        for (int k = 0; k < fields.length; k++) {
+            final String value = pattern.quoted[k]
+                    ? LogPatternMatcher.unescape(text, match.slots[2 * k], match.slots[2 * k + 1])
+                    : text.substring(match.slots[2 * k], match.slots[2 * k + 1]);
+            Object typed = value;
+            try {
+                if (fields[k].getDataType().getFieldType() == RecordFieldType.LONG) typed = Long.parseLong(value);
+                else if (fields[k].getDataType().getFieldType() == RecordFieldType.DOUBLE) typed = Double.parseDouble(value);
+            } catch (NumberFormatException e) {
+                // the field of this record only is a string
+                if (fields == pattern.fields) fields = pattern.fields.clone();
+                fields[k] = FieldNameCache.field(fields[k].getFieldName(), FieldNameCache.Naming.PLAIN, nameCacheStats);
+            }
+            record.setValue(fields[k], typed);
+        }
+        if (pattern.nameField != null) {
+            record.setValue(pattern.nameField, pattern.name);
+        }
+        record.incorporateSchema(fields == pattern.fields ? pattern.schema : new SimpleRecordSchema(fieldList(fields, pattern.nameField)));
+        return record;
+    }
+
+    private static List<RecordField> fieldList(RecordField[] fields, RecordField nameField) {
+        final List<RecordField> list = new ArrayList<>(Arrays.asList(fields));
+        if (nameField != null) list.add(nameField);
+        return list;
+    }
+}
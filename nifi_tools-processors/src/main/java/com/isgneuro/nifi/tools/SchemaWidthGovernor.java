@@ -0,0 +1,152 @@
+package com.isgneuro.nifi.tools;
+
+import org.apache.nifi.components.PropertyDescriptor;
+import org.apache.nifi.expression.ExpressionLanguageScope;
+import org.apache.nifi.processor.ProcessContext;
+import org.apache.nifi.processor.ProcessSession;
+import org.apache.nifi.processor.util.StandardValidators;
+import org.apache.nifi.serialization.record.Record;
+import org.apache.nifi.serialization.record.RecordField;
+import org.apache.nifi.serialization.record.RecordFieldType;
+import org.apache.nifi.serialization.record.RecordSchema;
+
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+/**
+ * Limits the number of fields the parse processors add to the schema of a FlowFile.
+ *
+ * The schema of a record already has the fields of the previous records of the FlowFile, so a new field is added
+ * only while the schema with the new names of the record is narrower than the maximum, fields of exploded array
+ * elements included. Values of fields over the limit and of denied keys
+ * are put into the MAP&lt;string,string&gt; field _extra of the record instead, a slot of the maximum is kept for it.
+ */
+final class SchemaWidthGovernor {
+    static final String EXTRA_FIELD_NAME = "_extra";
+    static final RecordField EXTRA_FIELD = new RecordField(EXTRA_FIELD_NAME,
+            RecordFieldType.MAP.getMapDataType(RecordFieldType.STRING.getDataType()), true);
+
+    static final SchemaWidthGovernor NONE = new SchemaWidthGovernor(-1, null);
+
+    static final PropertyDescriptor MAX_FIELDS = new PropertyDescriptor.Builder()
+            .name("max_fields")
+            .displayName("Maximum fields")
+            .description("Maximum number of fields in the schema of a flowfile, the " + EXTRA_FIELD_NAME
+                    + " map field included. Parsed fields over it are put into the " + EXTRA_FIELD_NAME + " map field. -1 for unlimited.")
+            .defaultValue("-1")
+            .expressionLanguageSupported(ExpressionLanguageScope.NONE)
+            .addValidator(StandardValidators.INTEGER_VALIDATOR)
+            .required(true)
+            .build();
+
+    static final PropertyDescriptor DENIED_KEYS = new PropertyDescriptor.Builder()
+            .name("denied_keys")
+            .displayName("Denied keys")
+            .description("Regular expression of parsed keys which are always put into the " + EXTRA_FIELD_NAME
+                    + " map field, e.g. keys made of request ids")
+            .expressionLanguageSupported(ExpressionLanguageScope.NONE)
+            .addValidator(StandardValidators.REGULAR_EXPRESSION_VALIDATOR)
+            .required(false)
+            .build();
+
+    private final int maxFields;
+    private final Pattern deniedKeys;
+    private final LongAdder folded = new LongAdder();
+    private final ThreadLocal<Added> added = ThreadLocal.withInitial(Added::new);
+
+    /**
+     * @param maxFields  maximum schema width, not limited if not positive
+     * @param deniedKeys pattern of keys to fold, null for none
+     */
+    SchemaWidthGovernor(int maxFields, Pattern deniedKeys) {
+        this.maxFields = maxFields;
+        this.deniedKeys = deniedKeys;
+    }
+
+    static SchemaWidthGovernor of(ProcessContext context) {
+        final int maxFields = Integer.parseInt(context.getProperty(MAX_FIELDS).getValue());
+        final Pattern deniedKeys = context.getProperty(DENIED_KEYS).isSet() ? Pattern.compile(context.getProperty(DENIED_KEYS).getValue()) : null;
+        return maxFields <= 0 && deniedKeys == null ? NONE : new SchemaWidthGovernor(maxFields, deniedKeys);
+    }
+
+    /**
+     * Sets the value of the parsed key as the field or puts it into the extra map of the record.
+     */
+    void setValue(Record record, List<RecordField> newfields, String key, RecordField field, Object value) {
+        if (this == NONE || admits(record, newfields, key, field)) {
+            record.setValue(field, value);
+            newfields.add(field);
+            return;
+        }
+        extra(record, newfields).put(field.getFieldName(), value == null ? null : value.toString());
+        folded.increment();
+    }
+
+    void report(ProcessSession session) {
+        final long f = folded.sumThenReset();
+        if (f > 0) session.adjustCounter("Fields folded into " + EXTRA_FIELD_NAME, f, false);
+    }
+
+    private boolean admits(Record record, List<RecordField> newfields, String key, RecordField field) {
+        if (deniedKeys != null && deniedKeys.matcher(key).matches()) {
+            return false;
+        }
+        final RecordSchema schema = record.getSchema();
+        if (maxFields <= 0 || schema.getField(field.getFieldName()).isPresent()) {
+            return true;
+        }
+        // a repeated key is counted once and the slot of _extra is kept until it is added, the limit is never exceeded
+        final Set<String> names = newNames(schema, newfields);
+        if (names.contains(field.getFieldName())) {
+            return true;
+        }
+        final int extraSlot = schema.getField(EXTRA_FIELD_NAME).isPresent() || names.contains(EXTRA_FIELD_NAME) ? 0 : 1;
+        return schema.getFieldCount() + names.size() + extraSlot < maxFields;
+    }
+
+    /**
+     * @return names of the fields added to the record which are not in its schema, the fields added since the last call
+     * with the same list are looked up only
+     */
+    private Set<String> newNames(RecordSchema schema, List<RecordField> newfields) {
+        final Added added = this.added.get();
+        if (added.newfields != newfields || added.scanned > newfields.size()) {
+            added.newfields = newfields;
+            added.scanned = 0;
+            added.names.clear();
+        }
+        for (; added.scanned < newfields.size(); added.scanned++) {
+            final String name = newfields.get(added.scanned).getFieldName();
+            if (!schema.getField(name).isPresent()) {
+                added.names.add(name);
+            }
+        }
+        return added.names;
+    }
+
+    /**
+     * New names of the record parsed by a thread.
+     */
+    private static final class Added {
+        private List<RecordField> newfields;
+        private int scanned;
+        private final Set<String> names = new HashSet<>();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, String> extra(Record record, List<RecordField> newfields) {
+        final Object current = record.getValue(EXTRA_FIELD);
+        if (current instanceof Map) {
+            return (Map<String, String>) current;
+        }
+        final Map<String, String> extra = new LinkedHashMap<>();
+        record.setValue(EXTRA_FIELD, extra);
+        newfields.add(EXTRA_FIELD);
+        return extra;
+    }
+}
@@ -0,0 +1,605 @@
+package com.isgneuro.nifi.tools;
+
+import javax.json.Json;
+import javax.json.JsonReader;
+import javax.json.JsonValue;
+import javax.json.stream.JsonLocation;
+import javax.json.stream.JsonParser;
+import javax.json.stream.JsonParsingException;
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/**
+ * JSON parser over a range of a CharSequence working in two stages, after simdjson.
+ *
+ * The first stage reads the text in blocks of 64 chars and builds bit masks of quotes, backslashes and
+ * structural chars ({}[]:,). Backslash runs of odd length give the escaped chars, a prefix xor of the unescaped
+ * quotes gives the chars inside strings, and the structural chars outside of strings together with the quotes
+ * are written to an index of positions. The second stage produces the parser events walking only the indexed
+ * positions: the text between them is read for strings and scalars only, containers are skipped by the index.
+ *
+ * Separators and control characters inside strings are handled as by {@link JsonCharSequenceReader}.
+ * Locations are offsets in the source, the stream offset of an event is the one after its first char.
+ */
+class StructuralJsonScanner implements JsonParser {
+    private static final long EVEN_BITS = 0x5555555555555555L;
+    private static final long ODD_BITS = ~EVEN_BITS;
+
+    private static final int QUOTE = 1;
+    private static final int BACKSLASH = 2;
+    private static final int STRUCTURAL = 4;
+    private static final byte[] CLASSES = new byte[128];
+
+    static {
+        CLASSES['"'] = QUOTE;
+        CLASSES['\\'] = BACKSLASH;
+        for (char c : "{}[]:,".toCharArray()) {
+            CLASSES[c] = STRUCTURAL;
+        }
+    }
+
+    // separator between two documents, its position is the start of the next document
+    private static final char NEXT_DOCUMENT = ';';
+
+    private static final int VALUE = 0;
+    private static final int VALUE_OR_END = 1;
+    private static final int KEY = 2;
+    private static final int KEY_OR_END = 3;
+    private static final int AFTER_VALUE = 4;
+    private static final int DONE = 5;
+
+    private final CharSequence src;
+    private final int end;
+    private final boolean escapeControlChars;
+
+    // stage 1 index
+    private int[] positions = new int[64];
+    private char[] kinds = new char[64];
+    private int count;
+
+    // stage 2 state
+    private int next;
+    private int cursor;
+    private int state = VALUE;
+    private boolean[] objects = new boolean[16];
+    private int depth;
+    private Event event;
+    private int eventPos;
+    private int valueStart;
+    private int valueEnd;
+    private boolean integral;
+    private boolean trailingChecked;
+
+    StructuralJsonScanner(CharSequence src, int start, int end, int[] separators, boolean escapeControlChars) {
+        this.src = src;
+        this.end = end;
+        this.escapeControlChars = escapeControlChars;
+        this.cursor = start;
+        index(start, separators);
+    }
+
+    // stage 1
+
+    private void index(int start, int[] separators) {
+        if (separators.length == 0) {
+            indexSegment(start, end);
+            return;
+        }
+        // documents between the separators are read as the elements of an array
+        addToken('[', start - 1);
+        int from = start;
+        for (int i = 0; i < separators.length; i += 2) {
+            indexSegment(from, separators[i]);
+            from = separators[i + 1];
+            addToken(NEXT_DOCUMENT, from);
+        }
+        indexSegment(from, end);
+        addToken(']', end);
+    }
+
+    private void indexSegment(int from, int to) {
+        final char[] block = new char[64];
+        long prevOddBackslashes = 0;
+        long prevInString = 0;
+        for (int base = from; base < to; base += 64) {
+            final int n = Math.min(64, to - base);
+            if (src instanceof String) {
+                ((String) src).getChars(base, base + n, block, 0);
+            } else {
+                for (int i = 0; i < n; i++) {
+                    block[i] = src.charAt(base + i);
+                }
+            }
+            long quotes = 0;
+            long backslashes = 0;
+            long structurals = 0;
+            for (int i = 0; i < n; i++) {
+                final char c = block[i];
+                if (c < 128) {
+                    final long cls = CLASSES[c];
+                    final long bit = 1L << i;
+                    quotes |= -(cls & 1) & bit;
+                    backslashes |= -((cls >> 1) & 1) & bit;
+                    structurals |= -((cls >> 2) & 1) & bit;
+                }
+            }
+
+            // chars after backslash runs of odd length, a run at the end of the previous block flips the parity
+            final long startEdges = backslashes & ~(backslashes << 1);
+            final long evenStartMask = EVEN_BITS ^ prevOddBackslashes;
+            final long evenStarts = startEdges & evenStartMask;
+            final long oddStarts = startEdges & ~evenStartMask;
+            final long evenCarries = backslashes + evenStarts;
+            long oddCarries = backslashes + oddStarts;
+            final boolean endsOddBackslashes = Long.compareUnsigned(oddCarries, backslashes) < 0;
+            oddCarries |= prevOddBackslashes;
+            prevOddBackslashes = endsOddBackslashes ? 1L : 0L;
+            final long escaped = (evenCarries & ~backslashes & ODD_BITS) | (oddCarries & ~backslashes & EVEN_BITS);
+
+            // chars from an opening quote up to the closing one
+            final long unescapedQuotes = quotes & ~escaped;
+            long inString = unescapedQuotes;
+            inString ^= inString << 1;
+            inString ^= inString << 2;
+            inString ^= inString << 4;
+            inString ^= inString << 8;
+            inString ^= inString << 16;
+            inString ^= inString << 32;
+            inString ^= prevInString;
+            prevInString = inString >> 63;
+
+            long tokens = (structurals & ~inString) | unescapedQuotes;
+            while (tokens != 0) {
+                final int i = Long.numberOfTrailingZeros(tokens);
+                addToken(block[i], base + i);
+                tokens &= tokens - 1;
+            }
+        }
+    }
+
+    private void addToken(char kind, int position) {
+        if (count == positions.length) {
+            positions = Arrays.copyOf(positions, count * 2);
+            kinds = Arrays.copyOf(kinds, count * 2);
+        }
+        positions[count] = position;
+        kinds[count++] = kind;
+    }
+
+    // stage 2
+
+    @Override
+    public boolean hasNext() {
+        if (state != DONE) {
+            return true;
+        }
+        if (!trailingChecked) {
+            trailingChecked = true;
+            if (next < count || skipBlank(cursor, end) < end) {
+                throw error("Unexpected content after the end of JSON", next < count ? positions[next] : skipBlank(cursor, end));
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public Event next() {
+        while (true) {
+            switch (state) {
+                case DONE:
+                    throw new NoSuchElementException();
+                case AFTER_VALUE: {
+                    final char c = token();
+                    final boolean object = objects[depth - 1];
+                    if (c == ',' || c == NEXT_DOCUMENT) {
+                        consume();
+                        state = object ? KEY : VALUE;
+                        continue;
+                    }
+                    if (c == (object ? '}' : ']')) {
+                        return endContainer();
+                    }
+                    throw error("Expected ',' or '" + (object ? '}' : ']') + "'", positions[next]);
+                }
+                case KEY_OR_END:
+                    if (token() == '}') {
+                        return endContainer();
+                    }
+                    // fall through
+                case KEY: {
+                    if (token() != '"') {
+                        throw error("Expected a member name", positions[next]);
+                    }
+                    string(Event.KEY_NAME);
+                    if (token() != ':') {
+                        throw error("Expected ':'", positions[next]);
+                    }
+                    consume();
+                    state = VALUE;
+                    return event;
+                }
+                case VALUE_OR_END:
+                    if (next < count && kinds[next] == ']' && skipBlank(cursor, positions[next]) == positions[next]) {
+                        return endContainer();
+                    }
+                    // fall through
+                default:
+                    return value();
+            }
+        }
+    }
+
+    private Event value() {
+        if (next >= count) {
+            throw error("Unexpected end of JSON", end);
+        }
+        final int position = positions[next];
+        final int scalarStart = skipBlank(cursor, position);
+        if (scalarStart < position) {
+            int scalarEnd = position;
+            while (isBlank(src.charAt(scalarEnd - 1))) {
+                scalarEnd--;
+            }
+            scalar(scalarStart, scalarEnd);
+            afterValue();
+            return event;
+        }
+        switch (kinds[next]) {
+            case '{':
+                startContainer(true);
+                state = KEY_OR_END;
+                return event = Event.START_OBJECT;
+            case '[':
+                startContainer(false);
+                state = VALUE_OR_END;
+                return event = Event.START_ARRAY;
+            case '"':
+                string(Event.VALUE_STRING);
+                afterValue();
+                return event;
+            default:
+                throw error("Expected a value", position);
+        }
+    }
+
+    /**
+     * @return kind of the next token, the text before it must be blank
+     */
+    private char token() {
+        if (next >= count) {
+            throw error("Unexpected end of JSON", end);
+        }
+        final char kind = kinds[next];
+        if (kind != NEXT_DOCUMENT && skipBlank(cursor, positions[next]) < positions[next]) {
+            throw error("Unexpected char '" + src.charAt(skipBlank(cursor, positions[next])) + "'", skipBlank(cursor, positions[next]));
+        }
+        return kind;
+    }
+
+    private void consume() {
+        eventPos = positions[next];
+        cursor = kinds[next] == NEXT_DOCUMENT ? eventPos : eventPos + 1;
+        next++;
+    }
+
+    private void startContainer(boolean object) {
+        consume();
+        if (depth == objects.length) {
+            objects = Arrays.copyOf(objects, depth * 2);
+        }
+        objects[depth++] = object;
+    }
+
+    private Event endContainer() {
+        consume();
+        event = objects[--depth] ? Event.END_OBJECT : Event.END_ARRAY;
+        afterValue();
+        return event;
+    }
+
+    private void afterValue() {
+        state = depth == 0 ? DONE : AFTER_VALUE;
+    }
+
+    private void string(Event stringEvent) {
+        final int open = positions[next];
+        if (next + 1 >= count || kinds[next + 1] != '"') {
+            throw error("Unterminated string", open);
+        }
+        final int close = positions[next + 1];
+        next += 2;
+        eventPos = open;
+        cursor = close + 1;
+        valueStart = open + 1;
+        valueEnd = close;
+        event = stringEvent;
+    }
+
+    private void scalar(int start, int scalarEnd) {
+        eventPos = start;
+        cursor = scalarEnd;
+        valueStart = start;
+        valueEnd = scalarEnd;
+        if (matches(start, scalarEnd, "true")) {
+            event = Event.VALUE_TRUE;
+        } else if (matches(start, scalarEnd, "false")) {
+            event = Event.VALUE_FALSE;
+        } else if (matches(start, scalarEnd, "null")) {
+            event = Event.VALUE_NULL;
+        } else if (isNumber(start, scalarEnd)) {
+            event = Event.VALUE_NUMBER;
+        } else {
+            throw error("Unexpected value '" + src.subSequence(start, scalarEnd) + "'", start);
+        }
+    }
+
+    private boolean matches(int start, int scalarEnd, String literal) {
+        if (scalarEnd - start != literal.length()) {
+            return false;
+        }
+        for (int i = 0; i < literal.length(); i++) {
+            if (src.charAt(start + i) != literal.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Checks the JSON number grammar and sets integral.
+     */
+    private boolean isNumber(int start, int numberEnd) {
+        int i = start;
+        if (i < numberEnd && src.charAt(i) == '-') i++;
+        if (i >= numberEnd) return false;
+        if (src.charAt(i) == '0') {
+            i++;
+        } else {
+            final int digits = i;
+            i = skipDigits(i, numberEnd);
+            if (i == digits) return false;
+        }
+        integral = true;
+        if (i < numberEnd && src.charAt(i) == '.') {
+            integral = false;
+            final int digits = ++i;
+            i = skipDigits(i, numberEnd);
+            if (i == digits) return false;
+        }
+        if (i < numberEnd && (src.charAt(i) == 'e' || src.charAt(i) == 'E')) {
+            integral = false;
+            i++;
+            if (i < numberEnd && (src.charAt(i) == '+' || src.charAt(i) == '-')) i++;
+            final int digits = i;
+            i = skipDigits(i, numberEnd);
+            if (i == digits) return false;
+        }
+        return i == numberEnd;
+    }
+
+    private int skipDigits(int i, int digitsEnd) {
+        while (i < digitsEnd && src.charAt(i) >= '0' && src.charAt(i) <= '9') i++;
+        return i;
+    }
+
+    private int skipBlank(int i, int blankEnd) {
+        while (i < blankEnd && isBlank(src.charAt(i))) i++;
+        return i;
+    }
+
+    private static boolean isBlank(char c) {
+        return c == ' ' || c == '\n' || c == '\r' || c == '\t';
+    }
+
+    @Override
+    public String getString() {
+        if (event == Event.KEY_NAME || event == Event.VALUE_STRING) {
+            return decode(src, valueStart, valueEnd, escapeControlChars);
+        }
+        if (event == Event.VALUE_NUMBER) {
+            return src.subSequence(valueStart, valueEnd).toString();
+        }
+        throw new IllegalStateException("getString() at " + event);
+    }
+
+    /**
+     * @return the string between the quotes at start - 1 and stringEnd with the escapes decoded
+     */
+    static String decode(CharSequence src, int start, int stringEnd, boolean escapeControlChars) {
+        int i = start;
+        while (i < stringEnd && src.charAt(i) != '\\' && src.charAt(i) >= 0x20) i++;
+        if (i == stringEnd) {
+            return src.subSequence(start, stringEnd).toString();
+        }
+        final StringBuilder sb = new StringBuilder(stringEnd - start);
+        sb.append(src, start, i);
+        while (i < stringEnd) {
+            final char c = src.charAt(i++);
+            if (c < 0x20) {
+                if (!escapeControlChars) {
+                    throw error("Unexpected control char in string", i - 1);
+                }
+                // as escaped by JsonCharSequenceReader
+                if (c == '\t') sb.append("    ");
+                else sb.append(c);
+            } else if (c != '\\') {
+                sb.append(c);
+            } else {
+                if (i >= stringEnd) {
+                    throw error("Unterminated escape", i - 1);
+                }
+                final char e = src.charAt(i++);
+                switch (e) {
+                    case '"':
+                    case '\\':
+                    case '/':
+                        sb.append(e);
+                        break;
+                    case 'b':
+                        sb.append('\b');
+                        break;
+                    case 'f':
+                        sb.append('\f');
+                        break;
+                    case 'n':
+                        sb.append('\n');
+                        break;
+                    case 'r':
+                        sb.append('\r');
+                        break;
+                    case 't':
+                        sb.append('\t');
+                        break;
+                    case 'u':
+                        if (i + 4 > stringEnd) {
+                            throw error("Invalid unicode escape", i - 2);
+                        }
+                        try {
+                            sb.append((char) Integer.parseInt(src.subSequence(i, i + 4).toString(), 16));
+                        } catch (NumberFormatException ex) {
+                            throw error("Invalid unicode escape", i - 2);
+                        }
+                        i += 4;
+                        break;
+                    default:
+                        throw error("Invalid escape '\\" + e + "'", i - 2);
+                }
+            }
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public boolean isIntegralNumber() {
+        return integral;
+    }
+
+    @Override
+    public int getInt() {
+        return getBigDecimal().intValue();
+    }
+
+    @Override
+    public long getLong() {
+        return getBigDecimal().longValue();
+    }
+
+    @Override
+    public BigDecimal getBigDecimal() {
+        if (event != Event.VALUE_NUMBER) {
+            throw new IllegalStateException("getBigDecimal() at " + event);
+        }
+        return new BigDecimal(src.subSequence(valueStart, valueEnd).toString());
+    }
+
+    @Override
+    public JsonValue getValue() {
+        switch (event) {
+            case VALUE_STRING:
+                return Json.createValue(getString());
+            case VALUE_NUMBER:
+                return Json.createValue(getBigDecimal());
+            case VALUE_TRUE:
+                return JsonValue.TRUE;
+            case VALUE_FALSE:
+                return JsonValue.FALSE;
+            case VALUE_NULL:
+                return JsonValue.NULL;
+            case START_OBJECT:
+            case START_ARRAY: {
+                final int start = eventPos;
+                skipContainer();
+                try (JsonReader reader = Json.createReader(new JsonCharSequenceReader(src, start, cursor,
+                        JsonCharSequenceReader.NO_SEPARATORS, escapeControlChars))) {
+                    return reader.readValue();
+                }
+            }
+            default:
+                throw new IllegalStateException("getValue() at " + event);
+        }
+    }
+
+    @Override
+    public void skipObject() {
+        if (event == Event.START_OBJECT) {
+            skipContainer();
+        }
+    }
+
+    @Override
+    public void skipArray() {
+        if (event == Event.START_ARRAY) {
+            skipContainer();
+        }
+    }
+
+    /**
+     * Moves to the end of the container just started, reading the index only.
+     */
+    private void skipContainer() {
+        int level = 1;
+        while (next < count) {
+            final char kind = kinds[next];
+            if (kind == '{' || kind == '[') {
+                level++;
+            } else if ((kind == '}' || kind == ']') && --level == 0) {
+                endContainer();
+                return;
+            }
+            next++;
+        }
+        throw error("Unexpected end of JSON", end);
+    }
+
+    @Override
+    public JsonLocation getLocation() {
+        return location(eventPos + 1);
+    }
+
+    /**
+     * @return value of the current scalar event, strings and numbers as {@link LazyJsonRecord.Value} read when needed
+     */
+    Object lazyValue(boolean typed) {
+        switch (event) {
+            case VALUE_STRING:
+                return new LazyJsonRecord.Value(src, valueStart, valueEnd, LazyJsonRecord.Value.STRING, typed, escapeControlChars);
+            case VALUE_NUMBER:
+                return new LazyJsonRecord.Value(src, valueStart, valueEnd,
+                        integral ? LazyJsonRecord.Value.INTEGRAL : LazyJsonRecord.Value.DECIMAL, typed, escapeControlChars);
+            case VALUE_TRUE:
+                return typed ? Boolean.TRUE : "true";
+            case VALUE_FALSE:
+                return typed ? Boolean.FALSE : "false";
+            default:
+                return null;
+        }
+    }
+
+    private static JsonParsingException error(String message, int position) {
+        return new JsonParsingException(message + " at offset " + position, location(position));
+    }
+
+    private static JsonLocation location(long offset) {
+        return new JsonLocation() {
+            @Override
+            public long getLineNumber() {
+                return -1;
+            }
+
+            @Override
+            public long getColumnNumber() {
+                return -1;
+            }
+
+            @Override
+            public long getStreamOffset() {
+                return offset;
+            }
+        };
+    }
+
+    @Override
+    public void close() {
+    }
+}
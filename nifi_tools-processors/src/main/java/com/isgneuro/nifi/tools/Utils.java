@@ -1,8 +1,89 @@
 package com.isgneuro.nifi.tools;
 
+import org.apache.nifi.serialization.SimpleRecordSchema;
+import org.apache.nifi.serialization.record.DataType;
+import org.apache.nifi.serialization.record.RecordField;
+import org.apache.nifi.serialization.record.RecordFieldType;
+import org.apache.nifi.serialization.record.RecordSchema;
+import org.apache.nifi.serialization.record.type.ChoiceDataType;
+
+import java.util.ArrayList;
+import java.util.List;
+
 public class Utils {
     final public static String FIELD_PREFIX = "";
     final public static String FIELD_NAME = "field.name";
     final public static String FIELD_VALUE = "field.value";
     final public static String FIELD_TYPE = "field.type";
+
+    /**
+     * Type of the fields of null values. A null has no type of its own, so it is a STRING marked to be told apart
+     * from the type of string values and dropped by {@link #withoutNullTypes}.
+     */
+    static final DataType NULL_VALUE_TYPE = RecordFieldType.STRING.getDataType("null");
+
+    /**
+     * Type of the field for a parsed value: LONG, DOUBLE, BOOLEAN, null for a null value or STRING for anything else.
+     */
+    public static RecordFieldType fieldTypeOf(final Object value) {
+        if (value == null) return null;
+        if (value instanceof Long) return RecordFieldType.LONG;
+        if (value instanceof Double) return RecordFieldType.DOUBLE;
+        if (value instanceof Boolean) return RecordFieldType.BOOLEAN;
+        if (value instanceof LazyJsonRecord.Value) return ((LazyJsonRecord.Value) value).fieldType();
+        return RecordFieldType.STRING;
+    }
+
+    /**
+     * Replaces the CHOICE types, which appear when records have values of different types in the same field, with STRING.
+     */
+    public static RecordSchema widenChoicesToString(final RecordSchema schema) {
+        boolean changed = false;
+        final List<RecordField> fields = new ArrayList<>(schema.getFieldCount());
+        for (RecordField field : schema.getFields()) {
+            if (field.getDataType().getFieldType() == RecordFieldType.CHOICE) {
+                fields.add(new RecordField(field.getFieldName(), RecordFieldType.STRING.getDataType(), field.getDefaultValue(), field.getAliases(), field.isNullable()));
+                changed = true;
+            } else {
+                fields.add(field);
+            }
+        }
+        return changed ? new SimpleRecordSchema(fields) : schema;
+    }
+
+    /**
+     * Drops the types of null values, so a field which is null in some records has the type of the other records,
+     * e.g. LONG instead of CHOICE[LONG, STRING]. A field which is null in all the records is STRING.
+     */
+    public static RecordSchema withoutNullTypes(final RecordSchema schema) {
+        boolean changed = false;
+        final List<RecordField> fields = new ArrayList<>(schema.getFieldCount());
+        for (RecordField field : schema.getFields()) {
+            final DataType type = withoutNullType(field.getDataType());
+            if (type != field.getDataType()) {
+                fields.add(new RecordField(field.getFieldName(), type, field.getDefaultValue(), field.getAliases(), field.isNullable()));
+                changed = true;
+            } else {
+                fields.add(field);
+            }
+        }
+        return changed ? new SimpleRecordSchema(fields) : schema;
+    }
+
+    private static DataType withoutNullType(final DataType type) {
+        if (type.equals(NULL_VALUE_TYPE)) {
+            return RecordFieldType.STRING.getDataType();
+        }
+        if (type.getFieldType() != RecordFieldType.CHOICE) {
+            return type;
+        }
+        final List<DataType> subTypes = new ArrayList<>(((ChoiceDataType) type).getPossibleSubTypes());
+        if (!subTypes.remove(NULL_VALUE_TYPE)) {
+            return type;
+        }
+        if (subTypes.isEmpty()) {
+            return RecordFieldType.STRING.getDataType();
+        }
+        return subTypes.size() == 1 ? subTypes.get(0) : RecordFieldType.CHOICE.getChoiceDataType(subTypes);
+    }
 }
@@ -0,0 +1,144 @@
+package com.isgneuro.nifi.tools.bloom;
+
+import org.apache.spark.util.sketch.BloomFilter;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+
+/**
+ * Helpers for the files kept in the bucket directory next to the data.
+ */
+public class BloomFiles {
+
+    private BloomFiles() {
+    }
+
+    /**
+     * Writes the filter to a temporary file in the same directory and renames it over the target,
+     * so readers never see a partially written bloom. Sparse filters are written in the compressed form
+     * if allowCompressed is set.
+     */
+    public static void writeAtomically(Path target, BloomFilter bloomFilter, boolean allowCompressed) throws IOException {
+        writeFileAtomically(target, os -> CompressedBloomFilter.writeTo(bloomFilter, os, allowCompressed));
+    }
+
+    /**
+     * Reads the bloom file in any of the supported forms.
+     */
+    public static BloomFilter readBloom(Path file) throws IOException {
+        byte[] bytes = Files.readAllBytes(file);
+        if (CompressedBloomFilter.isCompressed(bytes)) {
+            return CompressedBloomFilter.readFrom(bytes).inflate();
+        }
+        return BloomFilter.readFrom(new ByteArrayInputStream(bytes));
+    }
+
+    public static void writeAtomically(Path target, PostingIndex postingIndex) throws IOException {
+        writeFileAtomically(target, postingIndex::writeTo);
+    }
+
+    /**
+     * Appends the postings as a new block of the posting index file, the blocks already in the file are not read
+     * or rewritten. A block which could not be written completely is cut off, so a retry appends a whole block.
+     */
+    public static void append(Path target, PostingIndex postingIndex) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        postingIndex.writeTo(bos);
+        ByteBuffer block = ByteBuffer.wrap(bos.toByteArray());
+        try (FileChannel channel = FileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            long size = channel.size();
+            try {
+                channel.position(size);
+                while (block.hasRemaining()) {
+                    channel.write(block);
+                }
+                channel.force(false);
+            } catch (IOException e) {
+                channel.truncate(size);
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Rewrites the posting index file as a single block.
+     */
+    public static void compact(Path file) throws IOException {
+        writeAtomically(file, readPostingIndex(file));
+    }
+
+    public static void writeAtomically(Path target, NumericSummary numericSummary) throws IOException {
+        writeFileAtomically(target, numericSummary::writeTo);
+    }
+
+    public static void writeTokensAtomically(Path target, Collection<String> tokens) throws IOException {
+        writeFileAtomically(target, os -> {
+            BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(os, StandardCharsets.UTF_8));
+            for (String token : tokens) {
+                writer.write(token);
+                writer.newLine();
+            }
+            writer.flush();
+        });
+    }
+
+    static void writeFileAtomically(Path target, ContentWriter contentWriter) throws IOException {
+        Path tmp = tmpFile(target);
+        try {
+            try (OutputStream os = Files.newOutputStream(tmp)) {
+                contentWriter.write(os);
+            }
+            replace(tmp, target);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    public static PostingIndex readPostingIndex(Path file) throws IOException {
+        try (InputStream is = Files.newInputStream(file)) {
+            return PostingIndex.readFrom(is);
+        }
+    }
+
+    public static NumericSummary readNumericSummary(Path file) throws IOException {
+        try (InputStream is = Files.newInputStream(file)) {
+            return NumericSummary.readFrom(is);
+        }
+    }
+
+    static String postingIndexFileName(String bloomFilename) {
+        return bloomFilename + ".idx";
+    }
+
+    static String numericSummaryFileName(String bloomFilename) {
+        return bloomFilename + ".num";
+    }
+
+    /**
+     * Creates a new hidden temporary file next to the target, each writer gets its own file.
+     */
+    static Path tmpFile(Path target) throws IOException {
+        return Files.createTempFile(target.toAbsolutePath().getParent(), "." + target.getFileName() + ".", ".tmp");
+    }
+
+    interface ContentWriter {
+        void write(OutputStream os) throws IOException;
+    }
+
+    private static void replace(Path source, Path target) throws IOException {
+        Files.move(source, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
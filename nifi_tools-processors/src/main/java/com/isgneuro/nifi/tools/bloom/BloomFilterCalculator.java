@@ -1,6 +1,9 @@
 package com.isgneuro.nifi.tools.bloom;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.Striped;
 import org.apache.nifi.annotation.behavior.InputRequirement;
 import org.apache.nifi.annotation.behavior.Stateful;
 import org.apache.nifi.annotation.behavior.TriggerWhenEmpty;
@@ -9,8 +12,10 @@ import org.apache.nifi.annotation.documentation.Tags;
 import org.apache.nifi.annotation.lifecycle.OnScheduled;
 import org.apache.nifi.annotation.lifecycle.OnShutdown;
 import org.apache.nifi.annotation.lifecycle.OnStopped;
+import org.apache.nifi.components.AllowableValue;
 import org.apache.nifi.components.PropertyDescriptor;
 import org.apache.nifi.components.ValidationResult;
+import org.apache.nifi.components.Validator;
 import org.apache.nifi.components.state.Scope;
 import org.apache.nifi.components.state.StateManager;
 import org.apache.nifi.expression.ExpressionLanguageScope;
@@ -18,6 +23,7 @@ import org.apache.nifi.flowfile.FlowFile;
 import org.apache.nifi.processor.*;
 import org.apache.nifi.processor.exception.ProcessException;
 import org.apache.nifi.processor.util.StandardValidators;
+import org.apache.nifi.serialization.MalformedRecordException;
 import org.apache.nifi.serialization.RecordReader;
 import org.apache.nifi.serialization.RecordReaderFactory;
 import org.apache.nifi.serialization.record.Record;
@@ -28,9 +34,11 @@ import org.apache.spark.util.sketch.IncompatibleMergeException;
 import java.io.*;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.*;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
 import java.util.stream.Collectors;
 
 @TriggerWhenEmpty
@@ -39,6 +47,23 @@ import java.util.stream.Collectors;
 @CapabilityDescription("Calculates the bloom filter for the bucket given the _raw field ")
 @Stateful(scopes = {Scope.CLUSTER}, description = "Stores locks for bloom files that are currently being written")
 public class BloomFilterCalculator extends AbstractProcessor {
+    static final int POSTING_INDEX_COMPACT_BLOCKS = 16;
+
+    static final Validator FPP_VALIDATOR = (subject, value, context) -> {
+        String reason = null;
+        try {
+            double doubleVal = Double.parseDouble(value);
+            if (doubleVal <= 0.0) {
+                reason = "not a positive value";
+            }else if(doubleVal >= 1.0){
+                reason = "value can't be more than 1";
+            }
+        } catch (NumberFormatException var7) {
+            reason = "not a valid double";
+        }
+        return (new ValidationResult.Builder()).subject(subject).input(value).explanation(reason).valid(reason == null).build();
+    };
+
     static final PropertyDescriptor RECORD_READER = new PropertyDescriptor.Builder()
             .name("Record Reader")
             .description("A record reader to use for reading the records.")
@@ -68,20 +93,7 @@ public class BloomFilterCalculator extends AbstractProcessor {
             .description("False positive probabilty of bloom prediction." +
                     " If you want to change this parameter, make sure that there is not bloom file in bucket." +
                     " Otherwise you should delete existing file, but previous results will be lost.")
-            .addValidator((subject, value, context) -> {
-                String reason = null;
-                try {
-                    double doubleVal = Double.parseDouble(value);
-                    if (doubleVal <= 0.0) {
-                        reason = "not a positive value";
-                    }else if(doubleVal >= 1.0){
-                        reason = "value can't be more than 1";
-                    }
-                } catch (NumberFormatException var7) {
-                    reason = "not a valid double";
-                }
-                return (new ValidationResult.Builder()).subject(subject).input(value).explanation(reason).valid(reason == null).build();
-            })
+            .addValidator(FPP_VALIDATOR)
             .required(false)
             .build();
 
@@ -138,6 +150,61 @@ public class BloomFilterCalculator extends AbstractProcessor {
             .defaultValue("false")
             .allowableValues(new String[]{"true","false"})
             .build();
+    static final PropertyDescriptor BATCH_SIZE = new PropertyDescriptor.Builder()
+            .name("Batch size")
+            .defaultValue("1")
+            .description("Maximum number of flow files taken from the queue at once. Flow files of the batch are grouped by BucketID " +
+                    "and each group updates the bucket bloom filter once")
+            .addValidator(StandardValidators.POSITIVE_INTEGER_VALIDATOR)
+            .required(false)
+            .build();
+    static final AllowableValue SPARK_ENCODING = new AllowableValue("spark", "Spark",
+            "Bloom file is written in the Spark BloomFilter format");
+    static final AllowableValue AUTO_ENCODING = new AllowableValue("auto", "Auto",
+            "Sparsely filled bloom filters are written in the compressed format, others in the Spark BloomFilter format");
+    static final PropertyDescriptor BLOOM_FILE_ENCODING = new PropertyDescriptor.Builder()
+            .name("Bloom file encoding")
+            .description("Format of the bloom file. Compressed files are much smaller for quiet buckets, " +
+                    "but can only be read by readers that support the compressed format")
+            .required(false)
+            .allowableValues(SPARK_ENCODING, AUTO_ENCODING)
+            .defaultValue(SPARK_ENCODING.getValue())
+            .build();
+    static final AllowableValue ELECTION_OWNERSHIP = new AllowableValue("election", "Cluster election",
+            "Flow files of a bucket may come to any node. Nodes elect the one that writes elapsed blooms through the cluster state");
+    static final AllowableValue PARTITIONED_OWNERSHIP = new AllowableValue("partitioned", "Partitioned by attribute",
+            "The incoming connection is load balanced with the 'Partition by attribute' strategy on the bucket id, "
+                    + "so every bucket is processed by a single node and blooms are written without election");
+    static final PropertyDescriptor BUCKET_OWNERSHIP = new PropertyDescriptor.Builder()
+            .name("Bucket ownership")
+            .description("How nodes of the cluster avoid writing the same bloom file at the same time")
+            .required(false)
+            .allowableValues(ELECTION_OWNERSHIP, PARTITIONED_OWNERSHIP)
+            .defaultValue(ELECTION_OWNERSHIP.getValue())
+            .build();
+    static final PropertyDescriptor BUILD_POSTING_INDEX = new PropertyDescriptor.Builder()
+            .name("Build posting index")
+            .description("If set to 'true', an index of the data files containing each token will be written next to the bloom file " +
+                    "(bloom file name with idx extension)")
+            .required(false)
+            .defaultValue("false")
+            .allowableValues(new String[]{"true","false"})
+            .build();
+    static final PropertyDescriptor DATA_FILE_NAME = new PropertyDescriptor.Builder()
+            .name("Data file name")
+            .defaultValue("${filename}")
+            .description("Name of the data file in the bucket directory the records of the flow file are written to. Used by the posting index")
+            .expressionLanguageSupported(ExpressionLanguageScope.FLOWFILE_ATTRIBUTES)
+            .addValidator(StandardValidators.ATTRIBUTE_EXPRESSION_LANGUAGE_VALIDATOR)
+            .required(false)
+            .build();
+    static final PropertyDescriptor NUMERIC_FIELDS = new PropertyDescriptor.Builder()
+            .name("Numeric fields")
+            .description("Comma separated list of record fields to summarize for range queries. Min/max of every field are written " +
+                    "next to the bloom file (bloom file name with num extension) and magnitude tokens of the values are added to the bloom filter")
+            .addValidator(StandardValidators.NON_BLANK_VALIDATOR)
+            .required(false)
+            .build();
     static final Relationship REL_SUCCESS = new Relationship.Builder()
             .description("All FlowFiles that was putted to BloomFilter are routed to this relationship")
             .name("success")
@@ -162,6 +229,16 @@ public class BloomFilterCalculator extends AbstractProcessor {
     private Integer minTokenLength;
     private Boolean saveTokens;
     private String tokensFileName;
+    private Integer batchSize;
+    private Boolean buildPostingIndex;
+    private Boolean compressBloom;
+    private Boolean partitionedOwnership;
+    private final Striped<Lock> bucketLocks = Striped.lock(64);
+    // blocks appended to the posting index of the bucket since the last compaction
+    private final Cache<String, Integer> postingIndexBlocks = CacheBuilder.newBuilder().maximumSize(1024).build();
+    private List<String> numericFields;
+    private String numericSummaryFileName;
+    private String postingIndexFileName;
 
     @Override
     protected void init(final ProcessorInitializationContext context) {
@@ -177,6 +254,12 @@ public class BloomFilterCalculator extends AbstractProcessor {
         properties.add(FILTER_NUMERIC_TOKENS);
         properties.add(MIN_TOKEN_LENGTH);
         properties.add(SAVE_TOKENS);
+        properties.add(BATCH_SIZE);
+        properties.add(BLOOM_FILE_ENCODING);
+        properties.add(BUCKET_OWNERSHIP);
+        properties.add(BUILD_POSTING_INDEX);
+        properties.add(DATA_FILE_NAME);
+        properties.add(NUMERIC_FIELDS);
         this.properties = Collections.unmodifiableList(properties);
 
         final Set<Relationship> relationships = new HashSet<>();
@@ -209,6 +292,16 @@ public class BloomFilterCalculator extends AbstractProcessor {
         this.saveTokens = context.getProperty(SAVE_TOKENS).asBoolean();
         this.filterNumericTokens = context.getProperty(FILTER_NUMERIC_TOKENS).asBoolean();
         this.tokensFileName = String.format("%s.txt", this.bloomFilename);
+        this.batchSize = context.getProperty(BATCH_SIZE).asInteger();
+        this.buildPostingIndex = context.getProperty(BUILD_POSTING_INDEX).asBoolean();
+        this.compressBloom = AUTO_ENCODING.getValue().equals(context.getProperty(BLOOM_FILE_ENCODING).getValue());
+        this.partitionedOwnership = PARTITIONED_OWNERSHIP.getValue().equals(context.getProperty(BUCKET_OWNERSHIP).getValue());
+        this.numericFields = context.getProperty(NUMERIC_FIELDS).isSet()
+                ? Arrays.stream(context.getProperty(NUMERIC_FIELDS).getValue().split(","))
+                        .map(String::trim).filter(f -> !f.isEmpty()).collect(Collectors.toList())
+                : Collections.emptyList();
+        this.numericSummaryFileName = BloomFiles.numericSummaryFileName(this.bloomFilename);
+        this.postingIndexFileName = BloomFiles.postingIndexFileName(this.bloomFilename);
     }
 
     @OnStopped
@@ -227,34 +320,67 @@ public class BloomFilterCalculator extends AbstractProcessor {
     public void onTrigger(ProcessContext context, ProcessSession session) throws ProcessException {
         try {
             if(bloomFilters.hasElapsed()) {
-                makeWithElection(
-                        () -> bloomFilters.getElapsed().forEach((key, value) -> {
-                            try {
-                                writeBloom(key, value);
-                            } catch (Exception e) {
-                                getLogger().error(e.getMessage(), e);
-                            }
-                        }), context.getStateManager());
+                Runnable flush = () -> bloomFilters.getElapsed().forEach((key, value) -> {
+                    try {
+                        writeBloom(key, value);
+                    } catch (Exception e) {
+                        getLogger().error(e.getMessage(), e);
+                    }
+                });
+                if (partitionedOwnership) {
+                    // every bucket is owned by this node, there is nobody to compete with
+                    flush.run();
+                } else {
+                    makeWithElection(flush, context.getStateManager());
+                }
             }
         } catch (Exception e) {
             getLogger().error(e.getMessage(), e);
         }
 
-        FlowFile flowFile = session.get();
-        if (flowFile == null) {
+        List<FlowFile> flowFiles = session.get(batchSize);
+        if (flowFiles.isEmpty()) {
             return;
         }
 
-        try {
-            String id = context.getProperty(BUCKET_ID_VALUE).evaluateAttributeExpressions(flowFile).getValue();
-            getLogger().info("Processing flow file with bucket-id {}", id);
-            BloomWithTokens bloomWithTokens = calcBloom(flowFile, context, session);
-            updateBloom(id, bloomWithTokens);
-            session.transfer(flowFile, REL_SUCCESS);
-        } catch (Exception e) {
-            getLogger().error(e.getMessage(), e);
-            session.transfer(flowFile, REL_FAILURE);
+        final RecordReaderFactory factory = context.getProperty(RECORD_READER).asControllerService(RecordReaderFactory.class);
+        final StringSegmenter parser = new StringSegmenter(tokenizerStr, filterNumericTokens, minTokenLength);
+        final Map<String, List<FlowFile>> buckets = new LinkedHashMap<>();
+        for (FlowFile flowFile : flowFiles) {
+            try {
+                String id = context.getProperty(BUCKET_ID_VALUE).evaluateAttributeExpressions(flowFile).getValue();
+                buckets.computeIfAbsent(id, k -> new ArrayList<>()).add(flowFile);
+            } catch (Exception e) {
+                getLogger().error(e.getMessage(), e);
+                session.transfer(flowFile, REL_FAILURE);
+            }
         }
+
+        buckets.forEach((id, bucketFlowFiles) -> {
+            getLogger().info("Processing {} flow files with bucket-id {}", bucketFlowFiles.size(), id);
+            Set<String> tokens = new HashSet<>();
+            PostingIndex postingIndex = buildPostingIndex ? new PostingIndex() : null;
+            NumericSummary numericSummary = numericFields.isEmpty() ? null : new NumericSummary(numericFields);
+            List<FlowFile> processed = new ArrayList<>();
+            for (FlowFile flowFile : bucketFlowFiles) {
+                try {
+                    Set<String> flowFileTokens = readTokens(flowFile, factory, parser, session, numericSummary);
+                    if (postingIndex != null) {
+                        String dataFile = context.getProperty(DATA_FILE_NAME).evaluateAttributeExpressions(flowFile).getValue();
+                        postingIndex.add(dataFile, PostingIndex.WHOLE_FILE, flowFileTokens);
+                    }
+                    tokens.addAll(flowFileTokens);
+                    processed.add(flowFile);
+                } catch (Exception e) {
+                    getLogger().error(e.getMessage(), e);
+                    session.transfer(flowFile, REL_FAILURE);
+                }
+            }
+            if (!processed.isEmpty()) {
+                updateBloom(id, new BloomWithTokens(BloomFilter.create(expectedNumTokens, fpp), tokens, postingIndex, numericSummary));
+                session.transfer(processed, REL_SUCCESS);
+            }
+        });
     }
 
     private void makeWithElection(Runnable procedure, StateManager stateManager) throws IOException{
@@ -288,6 +414,12 @@ public class BloomFilterCalculator extends AbstractProcessor {
             try {
                 bloomInfo.getBloomWithTokens().getBloomFilter().mergeInPlace(curBloom.getBloomFilter());
                 bloomInfo.getBloomWithTokens().getBloomTokens().addAll(curBloom.getBloomTokens());
+                if (curBloom.getPostingIndex() != null) {
+                    bloomInfo.getBloomWithTokens().getPostingIndex().merge(curBloom.getPostingIndex());
+                }
+                if (curBloom.getNumericSummary() != null) {
+                    bloomInfo.getBloomWithTokens().getNumericSummary().merge(curBloom.getNumericSummary());
+                }
 
             } catch (IncompatibleMergeException e) {
                 getLogger().error("Error while merging bloom filter (when updating): {}", e.getMessage());
@@ -300,31 +432,65 @@ public class BloomFilterCalculator extends AbstractProcessor {
         bloomFilters.put(id, bloomInfo);
     }
 
-    protected BloomWithTokens calcBloom(FlowFile flowFile, ProcessContext context, ProcessSession session) {
-        try (InputStream is = session.read(flowFile)) {
-            String pathToDir = context.getProperty(BUCKET_ID_VALUE).evaluateAttributeExpressions(flowFile).getValue();
-            RecordReaderFactory factory = context.getProperty(RECORD_READER).asControllerService(RecordReaderFactory.class);
-            RecordReader reader = factory.createRecordReader(flowFile, is, getLogger());
-            StringSegmenter parser = new StringSegmenter(tokenizerStr, filterNumericTokens, minTokenLength);
+    private Set<String> readTokens(FlowFile flowFile, RecordReaderFactory factory, StringSegmenter parser, ProcessSession session,
+                                   NumericSummary numericSummary) {
+        try (InputStream is = session.read(flowFile);
+             RecordReader reader = factory.createRecordReader(flowFile, is, getLogger())) {
             Set<String> tokens = new HashSet<>();
-            Record record;
-            while ((record = reader.nextRecord()) != null) {
-                String curRaw = record.getAsString("_raw");
-                tokens.addAll(parser.parseString(curRaw));
-            }
-            return new BloomWithTokens(BloomFilter.create(expectedNumTokens, fpp), tokens);
+            collectTokens(reader, parser, tokens, numericFields, numericSummary);
+            return tokens;
         } catch (Exception e) {
             getLogger().error("Could not read flow file", e);
             throw new ProcessException(e);
         }
     }
 
+    /**
+     * Tokenizes the _raw field of every record and puts the tokens into a new bloom filter.
+     * Kept free of the processor state so it can be called from benchmarks.
+     */
+    public static BloomWithTokens calcBloom(RecordReader reader, StringSegmenter parser, long expectedNumTokens, double fpp)
+            throws IOException, MalformedRecordException {
+        Set<String> tokens = new HashSet<>();
+        collectTokens(reader, parser, tokens, Collections.emptyList(), null);
+        return new BloomWithTokens(BloomFilter.create(expectedNumTokens, fpp), tokens);
+    }
+
+    static void collectTokens(RecordReader reader, StringSegmenter parser, Set<String> tokens,
+                              List<String> numericFields, NumericSummary numericSummary)
+            throws IOException, MalformedRecordException {
+        Record record;
+        while ((record = reader.nextRecord()) != null) {
+            String curRaw = record.getAsString("_raw");
+            tokens.addAll(parser.parseString(curRaw));
+            if (numericSummary != null) {
+                for (String field : numericFields) {
+                    String magnitudeToken = numericSummary.add(field, record.getValue(field));
+                    if (magnitudeToken != null) {
+                        tokens.add(magnitudeToken);
+                    }
+                }
+            }
+        }
+    }
+
     private void writeBloom(String pathToDir, BloomWithTokens bloomFilterWithTokens) throws Exception {
+        // the same bucket can be flushed by several concurrent tasks of the processor
+        Lock lock = bucketLocks.get(pathToDir);
+        lock.lock();
+        try {
+            writeBloomLocked(pathToDir, bloomFilterWithTokens);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void writeBloomLocked(String pathToDir, BloomWithTokens bloomFilterWithTokens) throws Exception {
         if (Files.isDirectory(Paths.get(pathToDir))) {
             if (Files.isRegularFile(Paths.get(pathToDir, bloomFilename))) {
-                try (FileInputStream fis = new FileInputStream(new File(pathToDir, bloomFilename))) {
+                try {
                     // merging filters
-                    bloomFilterWithTokens.getBloomFilter().mergeInPlace(BloomFilter.readFrom(fis));
+                    bloomFilterWithTokens.getBloomFilter().mergeInPlace(BloomFiles.readBloom(Paths.get(pathToDir, bloomFilename)));
                     // merging tokens
                     if (saveTokens) {
                         if (Files.isRegularFile(Paths.get(pathToDir, tokensFileName))) {
@@ -338,37 +504,42 @@ public class BloomFilterCalculator extends AbstractProcessor {
                     getLogger().error("Error while merging bloom filter (when writing): {}", e.getMessage());
                 }
             }
+            if (bloomFilterWithTokens.getNumericSummary() != null && Files.isRegularFile(Paths.get(pathToDir, numericSummaryFileName))) {
+                try {
+                    bloomFilterWithTokens.getNumericSummary().merge(BloomFiles.readNumericSummary(Paths.get(pathToDir, numericSummaryFileName)));
+                } catch (IOException e) {
+                    getLogger().error("Error while merging numeric summary, it will be overwritten: {}", e.getMessage());
+                }
+            }
 
-            try (OutputStream os = Files.newOutputStream(new File(pathToDir, bloomFilename).toPath())) {
-                for (int i = 0; i <= maxWriteRetries; i++) {
-                    try {
-                        bloomFilterWithTokens.getBloomFilter().writeTo(os);
-                        if (saveTokens) {
-                            try (BufferedWriter bufferedWriter = Files.newBufferedWriter(
-                                    new File(pathToDir, tokensFileName).toPath(), StandardCharsets.UTF_8)) {
-                                bloomFilterWithTokens.getBloomTokens().forEach(line -> {
-                                    try {
-                                        bufferedWriter.write(line);
-                                        bufferedWriter.newLine();
-                                    } catch (IOException e) {
-                                        throw new UncheckedIOException(e);
-                                    }
-                                });
-                                bufferedWriter.flush();
-                            }
+            try {
+                // postings are appended before the bloom is replaced: extra postings only add files to read,
+                // missing ones would hide the data. A failed append is cut off, so the block is written once
+                if (bloomFilterWithTokens.getPostingIndex() != null) {
+                    Path postingIndexFile = Paths.get(pathToDir, postingIndexFileName);
+                    writeWithRetries(pathToDir, () -> BloomFiles.append(postingIndexFile, bloomFilterWithTokens.getPostingIndex()));
+                    compactPostingIndex(pathToDir, postingIndexFile);
+                }
+                writeWithRetries(pathToDir, () -> {
+                    BloomFiles.writeAtomically(Paths.get(pathToDir, bloomFilename), bloomFilterWithTokens.getBloomFilter(), compressBloom);
+                    if (saveTokens) {
+                        try (BufferedWriter bufferedWriter = Files.newBufferedWriter(
+                                new File(pathToDir, tokensFileName).toPath(), StandardCharsets.UTF_8)) {
+                            bloomFilterWithTokens.getBloomTokens().forEach(line -> {
+                                try {
+                                    bufferedWriter.write(line);
+                                    bufferedWriter.newLine();
+                                } catch (IOException e) {
+                                    throw new UncheckedIOException(e);
+                                }
+                            });
+                            bufferedWriter.flush();
                         }
-                        break;
                     }
-                    catch (Exception e) {
-                        getLogger().error("Error when writing bloom to disk: {}. Try one more time...", e.getMessage());
-                        Thread.sleep(1000);
-                        if (i == maxWriteRetries) {
-                            getLogger().error(
-                                    "Error when writing bloom to disk: {}. Bloom data will be erased for bucket {}", e.getMessage(), pathToDir);
-                            throw e;
-                        }
+                    if (bloomFilterWithTokens.getNumericSummary() != null) {
+                        BloomFiles.writeAtomically(Paths.get(pathToDir, numericSummaryFileName), bloomFilterWithTokens.getNumericSummary());
                     }
-                }
+                });
             } catch (Exception e) {
                 getLogger().error("Error when writing bloom to disk: {}", e.getMessage());
             }
@@ -376,4 +547,45 @@ public class BloomFilterCalculator extends AbstractProcessor {
             getLogger().error("Invalid bucket_id. Path {} is not directory", pathToDir);
         }
     }
+
+    /**
+     * Runs the write up to maxWriteRetries more times. A failed write must not leave anything a retry would duplicate.
+     */
+    private void writeWithRetries(String pathToDir, BucketWrite write) throws Exception {
+        for (int i = 0; ; i++) {
+            try {
+                write.run();
+                return;
+            } catch (Exception e) {
+                getLogger().error("Error when writing bloom to disk: {}. Try one more time...", e.getMessage());
+                Thread.sleep(1000);
+                if (i == maxWriteRetries) {
+                    getLogger().error(
+                            "Error when writing bloom to disk: {}. Bloom data will be erased for bucket {}", e.getMessage(), pathToDir);
+                    throw e;
+                }
+            }
+        }
+    }
+
+    /**
+     * Rewrites the posting index as a single block once the processor has appended POSTING_INDEX_COMPACT_BLOCKS blocks to it.
+     * Blocks appended before the processor was started are not counted.
+     */
+    private void compactPostingIndex(String pathToDir, Path postingIndexFile) {
+        if (postingIndexBlocks.asMap().merge(pathToDir, 1, Integer::sum) < POSTING_INDEX_COMPACT_BLOCKS) {
+            return;
+        }
+        try {
+            BloomFiles.compact(postingIndexFile);
+            postingIndexBlocks.invalidate(pathToDir);
+        } catch (IOException e) {
+            getLogger().error("Error while compacting posting index {}, it will be compacted on the next flush: {}",
+                    postingIndexFile, e.getMessage());
+        }
+    }
+
+    private interface BucketWrite {
+        void run() throws Exception;
+    }
 }
\ No newline at end of file
@@ -10,10 +10,22 @@ import java.util.Set;
 public class BloomWithTokens {
     private BloomFilter bloomFilter;
     private Set<String> bloomTokens;
+    private PostingIndex postingIndex;
+    private NumericSummary numericSummary;
 
     public BloomWithTokens(BloomFilter bloomFilter, Set<String> bloomTokens) {
+        this(bloomFilter, bloomTokens, null);
+    }
+
+    public BloomWithTokens(BloomFilter bloomFilter, Set<String> bloomTokens, PostingIndex postingIndex) {
+        this(bloomFilter, bloomTokens, postingIndex, null);
+    }
+
+    public BloomWithTokens(BloomFilter bloomFilter, Set<String> bloomTokens, PostingIndex postingIndex, NumericSummary numericSummary) {
         this.bloomFilter = bloomFilter;
         this.bloomTokens = bloomTokens;
+        this.postingIndex = postingIndex;
+        this.numericSummary = numericSummary;
         this.bloomTokens.forEach(this.bloomFilter::put);
     }
     public BloomFilter getBloomFilter() {
@@ -22,5 +34,11 @@ public class BloomWithTokens {
     public Set<String> getBloomTokens() {
         return bloomTokens;
     }
+    public PostingIndex getPostingIndex() {
+        return postingIndex;
+    }
+    public NumericSummary getNumericSummary() {
+        return numericSummary;
+    }
 
 }
@@ -0,0 +1,284 @@
+package com.isgneuro.nifi.tools.bloom;
+
+import org.apache.spark.util.sketch.BloomFilter;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Sparse on-disk form of a Spark bloom filter. Set bits are grouped by the high bits of their index into containers
+ * of 65536 bits and only the low 16 bits of every set bit are stored, like the array containers of a roaring bitmap.
+ *
+ * File format: int magic "BLMC", int version, int number of hash functions, int number of 64-bit words of the
+ * original filter, int number of containers, (int key, int cardinality) for every container, then the sorted
+ * unsigned shorts of all containers.
+ *
+ * The filter is probed directly in the encoded form with the same hashing as the Spark implementation,
+ * so it gives exactly the same answers as the filter it was written from.
+ */
+public class CompressedBloomFilter {
+    static final int MAGIC = 0x424C4D43;
+    private static final int VERSION = 1;
+    private static final int SPARK_VERSION = 1;
+    private static final int HEADER_SIZE = 20;
+    /**
+     * Every set bit takes 16 bits in the compressed form, so it is smaller only for filters filled below 1/16.
+     * The margin leaves room for the container directory.
+     */
+    static final double MAX_FILL_RATIO = 1.0 / 20;
+
+    private final ByteBuffer buffer;
+    private final int numHashFunctions;
+    private final long bitSize;
+    private final int[] keys;
+    private final int[] offsets;
+    private final int valuesStart;
+
+    private CompressedBloomFilter(ByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        if (buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a compressed bloom file");
+        }
+        int version = buffer.getInt(4);
+        if (version != VERSION) {
+            throw new IOException("Unsupported compressed bloom version " + version);
+        }
+        this.numHashFunctions = buffer.getInt(8);
+        this.bitSize = (long) buffer.getInt(12) * Long.SIZE;
+        int numContainers = buffer.getInt(16);
+        this.keys = new int[numContainers];
+        this.offsets = new int[numContainers + 1];
+        for (int i = 0; i < numContainers; i++) {
+            keys[i] = buffer.getInt(HEADER_SIZE + i * 8);
+            offsets[i + 1] = offsets[i] + buffer.getInt(HEADER_SIZE + i * 8 + 4);
+        }
+        this.valuesStart = HEADER_SIZE + numContainers * 8;
+        if (buffer.limit() < valuesStart + offsets[numContainers] * 2) {
+            throw new IOException("Compressed bloom file is truncated");
+        }
+    }
+
+    public static CompressedBloomFilter readFrom(byte[] bytes) throws IOException {
+        return new CompressedBloomFilter(ByteBuffer.wrap(bytes));
+    }
+
+    static boolean isCompressed(byte[] bytes) {
+        return bytes.length >= 4 && ByteBuffer.wrap(bytes).getInt(0) == MAGIC;
+    }
+
+    public boolean mightContainString(String item) {
+        return mightContainBinary(item.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public boolean mightContainBinary(byte[] item) {
+        int h1 = murmur3(item, 0);
+        int h2 = murmur3(item, h1);
+        for (int i = 1; i <= numHashFunctions; i++) {
+            int combinedHash = h1 + (i * h2);
+            // Flip all the bits if it's negative (guaranteed positive number)
+            if (combinedHash < 0) {
+                combinedHash = ~combinedHash;
+            }
+            if (!get(combinedHash % bitSize)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean get(long index) {
+        int container = binarySearchKey((int) (index >>> 16));
+        if (container < 0) {
+            return false;
+        }
+        int low = (int) (index & 0xFFFF);
+        int from = offsets[container];
+        int to = offsets[container + 1] - 1;
+        while (from <= to) {
+            int mid = (from + to) >>> 1;
+            int value = buffer.getShort(valuesStart + mid * 2) & 0xFFFF;
+            if (value < low) {
+                from = mid + 1;
+            } else if (value > low) {
+                to = mid - 1;
+            } else {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private int binarySearchKey(int key) {
+        int from = 0;
+        int to = keys.length - 1;
+        while (from <= to) {
+            int mid = (from + to) >>> 1;
+            if (keys[mid] < key) {
+                from = mid + 1;
+            } else if (keys[mid] > key) {
+                to = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Rebuilds the Spark filter, needed to merge the compressed file with a new filter.
+     */
+    public BloomFilter inflate() throws IOException {
+        long[] words = new long[(int) (bitSize / Long.SIZE)];
+        for (int c = 0; c < keys.length; c++) {
+            long high = (long) keys[c] << 16;
+            for (int i = offsets[c]; i < offsets[c + 1]; i++) {
+                long index = high | (buffer.getShort(valuesStart + i * 2) & 0xFFFF);
+                words[(int) (index >>> 6)] |= 1L << index;
+            }
+        }
+        ByteArrayOutputStream bos = new ByteArrayOutputStream(12 + words.length * 8);
+        DataOutputStream dos = new DataOutputStream(bos);
+        dos.writeInt(SPARK_VERSION);
+        dos.writeInt(numHashFunctions);
+        dos.writeInt(words.length);
+        for (long word : words) {
+            dos.writeLong(word);
+        }
+        dos.flush();
+        return BloomFilter.readFrom(new ByteArrayInputStream(bos.toByteArray()));
+    }
+
+    /**
+     * Writes the filter in the compressed form if it is filled below {@link #MAX_FILL_RATIO}, otherwise in the Spark form.
+     *
+     * @return true if the compressed form was written
+     */
+    public static boolean writeTo(BloomFilter bloomFilter, OutputStream out, boolean allowCompressed) throws IOException {
+        if (!allowCompressed) {
+            bloomFilter.writeTo(out);
+            return false;
+        }
+        SparkBits bits = SparkBits.of(bloomFilter);
+        if (bits.cardinality() >= MAX_FILL_RATIO * bits.words.length * Long.SIZE) {
+            bloomFilter.writeTo(out);
+            return false;
+        }
+        bits.writeCompressed(out);
+        return true;
+    }
+
+    /**
+     * Bits of a Spark bloom filter, read from its serialized form as the filter doesn't expose them.
+     */
+    private static class SparkBits {
+        private final int numHashFunctions;
+        private final long[] words;
+
+        private SparkBits(int numHashFunctions, long[] words) {
+            this.numHashFunctions = numHashFunctions;
+            this.words = words;
+        }
+
+        static SparkBits of(BloomFilter bloomFilter) throws IOException {
+            ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            bloomFilter.writeTo(bos);
+            DataInputStream dis = new DataInputStream(new ByteArrayInputStream(bos.toByteArray()));
+            int version = dis.readInt();
+            if (version != SPARK_VERSION) {
+                throw new IOException("Unsupported bloom filter version " + version);
+            }
+            int numHashFunctions = dis.readInt();
+            long[] words = new long[dis.readInt()];
+            for (int i = 0; i < words.length; i++) {
+                words[i] = dis.readLong();
+            }
+            return new SparkBits(numHashFunctions, words);
+        }
+
+        long cardinality() {
+            long res = 0;
+            for (long word : words) {
+                res += Long.bitCount(word);
+            }
+            return res;
+        }
+
+        void writeCompressed(OutputStream out) throws IOException {
+            // one container covers 65536 bits, that is 1024 words
+            int numKeys = (words.length + 1023) >>> 10;
+            int[] cardinalities = new int[numKeys];
+            int numContainers = 0;
+            for (int key = 0; key < numKeys; key++) {
+                for (int w = key << 10; w < Math.min(words.length, (key + 1) << 10); w++) {
+                    cardinalities[key] += Long.bitCount(words[w]);
+                }
+                if (cardinalities[key] > 0) {
+                    numContainers++;
+                }
+            }
+
+            DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(out));
+            dos.writeInt(MAGIC);
+            dos.writeInt(VERSION);
+            dos.writeInt(numHashFunctions);
+            dos.writeInt(words.length);
+            dos.writeInt(numContainers);
+            for (int key = 0; key < numKeys; key++) {
+                if (cardinalities[key] > 0) {
+                    dos.writeInt(key);
+                    dos.writeInt(cardinalities[key]);
+                }
+            }
+            for (int w = 0; w < words.length; w++) {
+                long word = words[w];
+                while (word != 0) {
+                    int bit = Long.numberOfTrailingZeros(word);
+                    dos.writeShort((((w & 1023) << 6) | bit));
+                    word &= word - 1;
+                }
+            }
+            dos.flush();
+        }
+    }
+
+    // Murmur3_x86_32.hashUnsafeBytes of spark-unsafe, which mixes the tail bytes one by one
+    // and so differs from the reference murmur3 for lengths not divisible by 4.
+
+    static int murmur3(byte[] bytes, int seed) {
+        int lengthAligned = bytes.length - bytes.length % 4;
+        int h1 = seed;
+        for (int i = 0; i < lengthAligned; i += 4) {
+            int halfWord = (bytes[i] & 0xFF) | (bytes[i + 1] & 0xFF) << 8 | (bytes[i + 2] & 0xFF) << 16 | (bytes[i + 3] & 0xFF) << 24;
+            h1 = mixH1(h1, mixK1(halfWord));
+        }
+        for (int i = lengthAligned; i < bytes.length; i++) {
+            h1 = mixH1(h1, mixK1(bytes[i]));
+        }
+        return fmix(h1, bytes.length);
+    }
+
+    private static int mixK1(int k1) {
+        k1 *= 0xcc9e2d51;
+        k1 = Integer.rotateLeft(k1, 15);
+        k1 *= 0x1b873593;
+        return k1;
+    }
+
+    private static int mixH1(int h1, int k1) {
+        h1 ^= k1;
+        h1 = Integer.rotateLeft(h1, 13);
+        h1 = h1 * 5 + 0xe6546b64;
+        return h1;
+    }
+
+    private static int fmix(int h1, int length) {
+        h1 ^= length;
+        h1 ^= h1 >>> 16;
+        h1 *= 0x85ebca6b;
+        h1 ^= h1 >>> 13;
+        h1 *= 0xc2b2ae35;
+        h1 ^= h1 >>> 16;
+        return h1;
+    }
+}
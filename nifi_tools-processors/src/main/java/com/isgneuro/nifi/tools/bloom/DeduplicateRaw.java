@@ -0,0 +1,258 @@
+package com.isgneuro.nifi.tools.bloom;
+
+import org.apache.nifi.annotation.behavior.InputRequirement;
+import org.apache.nifi.annotation.behavior.SupportsBatching;
+import org.apache.nifi.annotation.behavior.WritesAttribute;
+import org.apache.nifi.annotation.behavior.WritesAttributes;
+import org.apache.nifi.annotation.documentation.CapabilityDescription;
+import org.apache.nifi.annotation.documentation.Tags;
+import org.apache.nifi.annotation.lifecycle.OnScheduled;
+import org.apache.nifi.components.AllowableValue;
+import org.apache.nifi.components.PropertyDescriptor;
+import org.apache.nifi.expression.ExpressionLanguageScope;
+import org.apache.nifi.flowfile.FlowFile;
+import org.apache.nifi.flowfile.attributes.CoreAttributes;
+import org.apache.nifi.processor.*;
+import org.apache.nifi.processor.exception.ProcessException;
+import org.apache.nifi.processor.util.StandardValidators;
+import org.apache.nifi.serialization.RecordReader;
+import org.apache.nifi.serialization.RecordReaderFactory;
+import org.apache.nifi.serialization.RecordSetWriter;
+import org.apache.nifi.serialization.RecordSetWriterFactory;
+import org.apache.nifi.serialization.WriteResult;
+import org.apache.nifi.serialization.record.Record;
+import org.apache.nifi.serialization.record.RecordSchema;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+@SupportsBatching
+@InputRequirement(InputRequirement.Requirement.INPUT_REQUIRED)
+@Tags({"bloom", "filter", "deduplicate", "duplicate", "raw"})
+@CapabilityDescription("Removes records whose key (the _raw field by default) was already seen within the time window. "
+        + "Seen keys are kept in a ring of time-sliced bloom filters, so a small share of unique records "
+        + "can be taken for duplicates with the configured false positive probability.")
+@WritesAttributes({
+        @WritesAttribute(attribute = "record.count", description = "The number of records in the outgoing FlowFile"),
+        @WritesAttribute(attribute = "mime.type", description = "The MIME Type that the configured Record Writer indicates is appropriate")
+})
+public class DeduplicateRaw extends AbstractProcessor {
+    static final AllowableValue DROP_DUPLICATES = new AllowableValue("drop", "Drop",
+            "Duplicate records are removed from the flow");
+    static final AllowableValue ROUTE_DUPLICATES = new AllowableValue("route", "Route to duplicate",
+            "Duplicate records are written to a separate FlowFile routed to the 'duplicate' relationship");
+
+    static final PropertyDescriptor RECORD_WRITER = new PropertyDescriptor.Builder()
+            .name("Record Writer")
+            .description("A record writer to use for writing the records.")
+            .identifiesControllerService(RecordSetWriterFactory.class)
+            .required(true)
+            .build();
+    static final PropertyDescriptor KEY_FIELD = new PropertyDescriptor.Builder()
+            .name("Key field")
+            .defaultValue("_raw")
+            .description("Name of the field whose value identifies the record. Records without this field are never treated as duplicates")
+            .addValidator(StandardValidators.NON_BLANK_VALIDATOR)
+            .expressionLanguageSupported(ExpressionLanguageScope.VARIABLE_REGISTRY)
+            .required(true)
+            .build();
+    static final PropertyDescriptor TIME_WINDOW = new PropertyDescriptor.Builder()
+            .name("Time window")
+            .defaultValue("10 min")
+            .description("Records are compared with the keys seen during this period of time")
+            .addValidator(StandardValidators.TIME_PERIOD_VALIDATOR)
+            .required(true)
+            .build();
+    static final PropertyDescriptor NUM_SLICES = new PropertyDescriptor.Builder()
+            .name("Number of slices")
+            .defaultValue("6")
+            .description("The time window is divided into this number of bloom filters. Keys are forgotten one slice at a time, " +
+                    "so more slices give a more precise window at the cost of more lookups per record")
+            .addValidator(StandardValidators.POSITIVE_INTEGER_VALIDATOR)
+            .required(true)
+            .build();
+    static final PropertyDescriptor EXPECTED_NUM_RECORDS = new PropertyDescriptor.Builder()
+            .name("Expected number of records")
+            .defaultValue("1000000")
+            .description("Number of expected unique records in one slice of the time window")
+            .addValidator(StandardValidators.POSITIVE_LONG_VALIDATOR)
+            .required(true)
+            .build();
+    static final PropertyDescriptor FALSE_POSITIVE_PROBABILITY = new PropertyDescriptor.Builder()
+            .name("False positive probability")
+            .defaultValue("0.001")
+            .description("Probability that a unique record is taken for a duplicate by one slice of the time window")
+            .addValidator(BloomFilterCalculator.FPP_VALIDATOR)
+            .required(true)
+            .build();
+    static final PropertyDescriptor DUPLICATE_STRATEGY = new PropertyDescriptor.Builder()
+            .name("Duplicate strategy")
+            .description("What to do with the duplicate records")
+            .allowableValues(DROP_DUPLICATES, ROUTE_DUPLICATES)
+            .defaultValue(DROP_DUPLICATES.getValue())
+            .required(true)
+            .build();
+
+    static final Relationship REL_SUCCESS = new Relationship.Builder()
+            .name("success")
+            .description("Records that were not seen within the time window are routed to this relationship")
+            .build();
+    static final Relationship REL_DUPLICATE = new Relationship.Builder()
+            .name("duplicate")
+            .description("Duplicate records are routed to this relationship if 'Duplicate strategy' is 'Route to duplicate'")
+            .build();
+    static final Relationship REL_FAILURE = new Relationship.Builder()
+            .name("failure")
+            .description("When a flowFile fails it is routed here.")
+            .build();
+
+    private List<PropertyDescriptor> properties;
+    private Set<Relationship> relationships;
+
+    private volatile TimeWindowedBloomFilter seenKeys;
+
+    @Override
+    protected void init(final ProcessorInitializationContext context) {
+        final List<PropertyDescriptor> properties = new ArrayList<>();
+        properties.add(BloomFilterCalculator.RECORD_READER);
+        properties.add(RECORD_WRITER);
+        properties.add(KEY_FIELD);
+        properties.add(TIME_WINDOW);
+        properties.add(NUM_SLICES);
+        properties.add(EXPECTED_NUM_RECORDS);
+        properties.add(FALSE_POSITIVE_PROBABILITY);
+        properties.add(DUPLICATE_STRATEGY);
+        this.properties = Collections.unmodifiableList(properties);
+
+        final Set<Relationship> relationships = new HashSet<>();
+        relationships.add(REL_SUCCESS);
+        relationships.add(REL_DUPLICATE);
+        relationships.add(REL_FAILURE);
+        this.relationships = Collections.unmodifiableSet(relationships);
+    }
+
+    @Override
+    protected List<PropertyDescriptor> getSupportedPropertyDescriptors() {
+        return properties;
+    }
+
+    @Override
+    public Set<Relationship> getRelationships() {
+        return relationships;
+    }
+
+    @OnScheduled
+    public void onScheduled(final ProcessContext context) {
+        if (seenKeys == null) {
+            seenKeys = new TimeWindowedBloomFilter(
+                    context.getProperty(TIME_WINDOW).asTimePeriod(TimeUnit.MILLISECONDS),
+                    context.getProperty(NUM_SLICES).asInteger(),
+                    context.getProperty(EXPECTED_NUM_RECORDS).asLong(),
+                    context.getProperty(FALSE_POSITIVE_PROBABILITY).asDouble());
+        }
+    }
+
+    @Override
+    public void onPropertyModified(final PropertyDescriptor descriptor, final String oldValue, final String newValue) {
+        // filters of another size or window can't be reused
+        if (descriptor.equals(TIME_WINDOW) || descriptor.equals(NUM_SLICES)
+                || descriptor.equals(EXPECTED_NUM_RECORDS) || descriptor.equals(FALSE_POSITIVE_PROBABILITY)) {
+            seenKeys = null;
+        }
+    }
+
+    @Override
+    public void onTrigger(ProcessContext context, ProcessSession session) throws ProcessException {
+        FlowFile flowFile = session.get();
+        if (flowFile == null) {
+            return;
+        }
+
+        final RecordReaderFactory readerFactory = context.getProperty(BloomFilterCalculator.RECORD_READER).asControllerService(RecordReaderFactory.class);
+        final RecordSetWriterFactory writerFactory = context.getProperty(RECORD_WRITER).asControllerService(RecordSetWriterFactory.class);
+        final String keyField = context.getProperty(KEY_FIELD).evaluateAttributeExpressions().getValue();
+        final boolean routeDuplicates = ROUTE_DUPLICATES.getValue().equals(context.getProperty(DUPLICATE_STRATEGY).getValue());
+        final Map<String, String> originalAttributes = flowFile.getAttributes();
+
+        FlowFile unique = session.create(flowFile);
+        FlowFile duplicates = routeDuplicates ? session.create(flowFile) : null;
+        final Map<String, String> uniqueAttributes = new HashMap<>();
+        final Map<String, String> duplicateAttributes = new HashMap<>();
+        // keys are remembered only after the session is committed, a failed or rolled back FlowFile is processed again
+        final Set<Long> newKeys = new HashSet<>();
+        int numUnique;
+        int numDuplicates = 0;
+        try (InputStream in = session.read(flowFile);
+             RecordReader reader = readerFactory.createRecordReader(flowFile, in, getLogger())) {
+            final RecordSchema writeSchema = writerFactory.getSchema(originalAttributes, reader.getSchema());
+            try (OutputStream uniqueOut = session.write(unique);
+                 RecordSetWriter uniqueWriter = writerFactory.createWriter(getLogger(), writeSchema, uniqueOut, originalAttributes);
+                 OutputStream duplicateOut = routeDuplicates ? session.write(duplicates) : null;
+                 RecordSetWriter duplicateWriter = routeDuplicates
+                         ? writerFactory.createWriter(getLogger(), writeSchema, duplicateOut, originalAttributes) : null) {
+                uniqueWriter.beginRecordSet();
+                if (duplicateWriter != null) {
+                    duplicateWriter.beginRecordSet();
+                }
+
+                Record record;
+                while ((record = reader.nextRecord()) != null) {
+                    String key = record.getAsString(keyField);
+                    Long keyHash = key == null ? null : TimeWindowedBloomFilter.keyHash(key);
+                    if (keyHash != null && (newKeys.contains(keyHash) || seenKeys.mightContain(keyHash, System.currentTimeMillis()))) {
+                        numDuplicates++;
+                        if (duplicateWriter != null) {
+                            duplicateWriter.write(record);
+                        }
+                    } else {
+                        if (keyHash != null) {
+                            newKeys.add(keyHash);
+                        }
+                        uniqueWriter.write(record);
+                    }
+                }
+
+                numUnique = finish(uniqueWriter, uniqueAttributes);
+                if (duplicateWriter != null) {
+                    finish(duplicateWriter, duplicateAttributes);
+                }
+            }
+        } catch (Exception e) {
+            getLogger().error("Failed to process {}; will route to failure", new Object[]{flowFile, e});
+            session.remove(unique);
+            if (duplicates != null) {
+                session.remove(duplicates);
+            }
+            session.transfer(flowFile, REL_FAILURE);
+            return;
+        }
+
+        session.transfer(session.putAllAttributes(unique, uniqueAttributes), REL_SUCCESS);
+        if (duplicates != null) {
+            if (numDuplicates > 0) {
+                session.transfer(session.putAllAttributes(duplicates, duplicateAttributes), REL_DUPLICATE);
+            } else {
+                session.remove(duplicates);
+            }
+        }
+        session.remove(flowFile);
+
+        session.adjustCounter("Unique records", numUnique, false);
+        session.adjustCounter("Duplicate records", numDuplicates, false);
+        getLogger().debug("{} unique and {} duplicate records in {}", new Object[]{numUnique, numDuplicates, flowFile});
+
+        final TimeWindowedBloomFilter filter = seenKeys;
+        session.commitAsync(() -> filter.putAll(newKeys, System.currentTimeMillis()));
+    }
+
+    private static int finish(RecordSetWriter writer, Map<String, String> attributes) throws IOException {
+        final WriteResult writeResult = writer.finishRecordSet();
+        attributes.put("record.count", String.valueOf(writeResult.getRecordCount()));
+        attributes.put(CoreAttributes.MIME_TYPE.key(), writer.getMimeType());
+        attributes.putAll(writeResult.getAttributes());
+        return writeResult.getRecordCount();
+    }
+}
@@ -0,0 +1,186 @@
+package com.isgneuro.nifi.tools.bloom;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.util.*;
+import java.util.function.Predicate;
+
+/**
+ * Min/max of the numeric fields of the bucket and magnitude tokens used to prune range queries.
+ *
+ * A magnitude token is field#&lt;sign&gt;&lt;number of integer digits&gt;:&lt;leading digit&gt;, e.g. status#+3:5 for 503.
+ * Values between -1 and 1 (exclusive) get 0 digits and leading digit 0. The tokens are put into the bucket bloom,
+ * so a range can be checked by probing the tokens of all magnitudes it covers.
+ */
+public class NumericSummary {
+    static final String TOKEN_SEPARATOR = "#";
+    /**
+     * Ranges covering more magnitudes are only checked against min/max.
+     */
+    static final int MAX_RANGE_PROBES = 256;
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final TypeReference<TreeMap<String, FieldRange>> FIELDS_TYPE = new TypeReference<TreeMap<String, FieldRange>>() {};
+
+    private final TreeMap<String, FieldRange> fields;
+
+    public NumericSummary(Collection<String> fieldNames) {
+        this(new TreeMap<>());
+        fieldNames.forEach(name -> fields.put(name, new FieldRange()));
+    }
+
+    private NumericSummary(TreeMap<String, FieldRange> fields) {
+        this.fields = fields;
+    }
+
+    public static class FieldRange {
+        public Double min;
+        public Double max;
+        public long count;
+
+        void add(double value) {
+            min = min == null ? value : Math.min(min, value);
+            max = max == null ? value : Math.max(max, value);
+            count++;
+        }
+
+        void merge(FieldRange other) {
+            if (other.count == 0) {
+                return;
+            }
+            min = min == null ? other.min : Math.min(min, other.min);
+            max = max == null ? other.max : Math.max(max, other.max);
+            count += other.count;
+        }
+    }
+
+    /**
+     * Adds the value to the summary and returns its magnitude token, or null if the value is not a number.
+     */
+    public synchronized String add(String field, Object value) {
+        Double number = toDouble(value);
+        if (number == null) {
+            return null;
+        }
+        fields.computeIfAbsent(field, k -> new FieldRange()).add(number);
+        return magnitudeToken(field, number);
+    }
+
+    public synchronized void merge(NumericSummary other) {
+        synchronized (other) {
+            other.fields.forEach((name, range) -> fields.computeIfAbsent(name, k -> new FieldRange()).merge(range));
+        }
+    }
+
+    public synchronized FieldRange get(String field) {
+        return fields.get(field);
+    }
+
+    /**
+     * Decides whether the bucket can contain a value of the field between lo and hi (inclusive).
+     *
+     * @param bloom probe of the bucket bloom filter, e.g. BloomFilter::mightContainString
+     */
+    public synchronized boolean mayContainRange(String field, double lo, double hi, Predicate<String> bloom) {
+        FieldRange range = fields.get(field);
+        if (range == null) {
+            // the field is not summarized, nothing is known about it
+            return true;
+        }
+        if (range.count == 0) {
+            return false;
+        }
+        lo = Math.max(lo, range.min);
+        hi = Math.min(hi, range.max);
+        if (lo > hi) {
+            return false;
+        }
+        List<String> tokens = new ArrayList<>();
+        if (hi >= 0 && !addMagnitudes(tokens, field, '+', Math.max(lo, 0), hi)) {
+            return true;
+        }
+        if (lo < 0 && !addMagnitudes(tokens, field, '-', -Math.min(hi, 0), -lo)) {
+            return true;
+        }
+        for (String token : tokens) {
+            if (bloom.test(token)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public synchronized void writeTo(OutputStream out) throws IOException {
+        MAPPER.writeValue(out, fields);
+    }
+
+    public static NumericSummary readFrom(InputStream in) throws IOException {
+        return new NumericSummary(MAPPER.readValue(in, FIELDS_TYPE));
+    }
+
+    static String magnitudeToken(String field, double value) {
+        char sign = value < 0 ? '-' : '+';
+        int[] magnitude = magnitude(Math.abs(value));
+        return field + TOKEN_SEPARATOR + sign + magnitude[0] + ":" + magnitude[1];
+    }
+
+    /**
+     * Adds the tokens of all magnitudes between absolute values from and to.
+     *
+     * @return false if there are too many of them
+     */
+    private static boolean addMagnitudes(List<String> tokens, String field, char sign, double from, double to) {
+        int[] cur = magnitude(from);
+        int[] last = magnitude(to);
+        while (true) {
+            if (tokens.size() == MAX_RANGE_PROBES) {
+                return false;
+            }
+            tokens.add(field + TOKEN_SEPARATOR + sign + cur[0] + ":" + cur[1]);
+            if (cur[0] == last[0] && cur[1] == last[1]) {
+                return true;
+            }
+            if (cur[0] == 0) {
+                cur[0] = 1;
+                cur[1] = 1;
+            } else if (++cur[1] == 10) {
+                cur[0]++;
+                cur[1] = 1;
+            }
+        }
+    }
+
+    /**
+     * Number of integer digits and the leading digit of a non-negative value.
+     */
+    private static int[] magnitude(double abs) {
+        if (abs < 1) {
+            return new int[]{0, 0};
+        }
+        String digits = abs < Long.MAX_VALUE
+                ? Long.toString((long) abs)
+                : BigDecimal.valueOf(abs).toBigInteger().toString();
+        return new int[]{digits.length(), digits.charAt(0) - '0'};
+    }
+
+    private static Double toDouble(Object value) {
+        double number;
+        if (value instanceof Number) {
+            number = ((Number) value).doubleValue();
+        } else if (value instanceof String) {
+            try {
+                number = Double.parseDouble(((String) value).trim());
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        } else {
+            return null;
+        }
+        return Double.isNaN(number) || Double.isInfinite(number) ? null : number;
+    }
+}
@@ -0,0 +1,194 @@
+package com.isgneuro.nifi.tools.bloom;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Maps hashed tokens to the data files and row groups of the bucket that contain them.
+ * Row group -1 means the whole file (used when the row group of the record is unknown).
+ *
+ * File format: a sequence of blocks, each one is magic "PIDX", int version, int number of files followed by the file
+ * names (modified UTF-8), int number of tokens followed by the tokens sorted by hash. Every token is the long hash,
+ * varint number of postings and the sorted postings as varint deltas. A posting is (file id << 32 | row group).
+ * Updates append a block with the new postings only, the blocks are merged when the file is read.
+ */
+public class PostingIndex {
+    public static final int WHOLE_FILE = -1;
+
+    private static final int MAGIC = 0x50494458;
+    private static final int VERSION = 1;
+    private static final HashFunction HASH_FUNCTION = Hashing.murmur3_128();
+
+    private final List<String> files = new ArrayList<>();
+    private final Map<String, Integer> fileIds = new HashMap<>();
+    private final Map<Long, Set<Long>> postings = new HashMap<>();
+
+    public static long tokenHash(String token) {
+        return HASH_FUNCTION.hashString(token, StandardCharsets.UTF_8).asLong();
+    }
+
+    public synchronized void add(String file, int rowGroup, Collection<String> tokens) {
+        long posting = posting(fileId(file), rowGroup);
+        for (String token : tokens) {
+            postings.computeIfAbsent(tokenHash(token), k -> new HashSet<>()).add(posting);
+        }
+    }
+
+    public synchronized void merge(PostingIndex other) {
+        Map<Integer, Integer> remap = new HashMap<>();
+        synchronized (other) {
+            for (int i = 0; i < other.files.size(); i++) {
+                remap.put(i, fileId(other.files.get(i)));
+            }
+            other.postings.forEach((hash, otherPostings) -> {
+                Set<Long> target = postings.computeIfAbsent(hash, k -> new HashSet<>());
+                for (long posting : otherPostings) {
+                    target.add(posting(remap.get(fileOf(posting)), rowGroupOf(posting)));
+                }
+            });
+        }
+    }
+
+    /**
+     * Returns the row groups that might contain the token, grouped by file name.
+     * An empty map means that the token is not in the bucket.
+     */
+    public synchronized Map<String, SortedSet<Integer>> lookup(String token) {
+        Map<String, SortedSet<Integer>> res = new TreeMap<>();
+        Set<Long> tokenPostings = postings.get(tokenHash(token));
+        if (tokenPostings != null) {
+            for (long posting : tokenPostings) {
+                res.computeIfAbsent(files.get(fileOf(posting)), k -> new TreeSet<>()).add(rowGroupOf(posting));
+            }
+        }
+        return res;
+    }
+
+    public synchronized int numTokens() {
+        return postings.size();
+    }
+
+    public synchronized void writeTo(OutputStream out) throws IOException {
+        DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(out));
+        dos.writeInt(MAGIC);
+        dos.writeInt(VERSION);
+        dos.writeInt(files.size());
+        for (String file : files) {
+            dos.writeUTF(file);
+        }
+        long[] hashes = new long[postings.size()];
+        int i = 0;
+        for (long hash : postings.keySet()) {
+            hashes[i++] = hash;
+        }
+        Arrays.sort(hashes);
+        dos.writeInt(hashes.length);
+        for (long hash : hashes) {
+            Set<Long> tokenPostings = postings.get(hash);
+            long[] sorted = new long[tokenPostings.size()];
+            int j = 0;
+            for (long posting : tokenPostings) {
+                sorted[j++] = posting;
+            }
+            Arrays.sort(sorted);
+            dos.writeLong(hash);
+            writeVarLong(dos, sorted.length);
+            long prev = 0;
+            for (long posting : sorted) {
+                writeVarLong(dos, posting - prev);
+                prev = posting;
+            }
+        }
+        dos.flush();
+    }
+
+    public static PostingIndex readFrom(InputStream in) throws IOException {
+        DataInputStream dis = new DataInputStream(new BufferedInputStream(in));
+        PostingIndex index = readBlock(dis);
+        while (hasMore(dis)) {
+            index.merge(readBlock(dis));
+        }
+        return index;
+    }
+
+    private static boolean hasMore(DataInputStream dis) throws IOException {
+        dis.mark(1);
+        int next = dis.read();
+        dis.reset();
+        return next >= 0;
+    }
+
+    private static PostingIndex readBlock(DataInputStream dis) throws IOException {
+        if (dis.readInt() != MAGIC) {
+            throw new IOException("Not a posting index file");
+        }
+        int version = dis.readInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported posting index version " + version);
+        }
+        PostingIndex index = new PostingIndex();
+        int numFiles = dis.readInt();
+        for (int i = 0; i < numFiles; i++) {
+            index.fileId(dis.readUTF());
+        }
+        int numTokens = dis.readInt();
+        for (int i = 0; i < numTokens; i++) {
+            long hash = dis.readLong();
+            int size = (int) readVarLong(dis);
+            Set<Long> tokenPostings = new HashSet<>(size * 2);
+            long posting = 0;
+            for (int j = 0; j < size; j++) {
+                posting += readVarLong(dis);
+                tokenPostings.add(posting);
+            }
+            index.postings.put(hash, tokenPostings);
+        }
+        return index;
+    }
+
+    private int fileId(String file) {
+        Integer id = fileIds.get(file);
+        if (id == null) {
+            id = files.size();
+            files.add(file);
+            fileIds.put(file, id);
+        }
+        return id;
+    }
+
+    private static long posting(int fileId, int rowGroup) {
+        return ((long) fileId << 32) | (rowGroup & 0xFFFFFFFFL);
+    }
+
+    private static int fileOf(long posting) {
+        return (int) (posting >>> 32);
+    }
+
+    private static int rowGroupOf(long posting) {
+        return (int) posting;
+    }
+
+    private static void writeVarLong(DataOutput out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    private static long readVarLong(DataInput in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = in.readByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint in posting index");
+    }
+}
@@ -0,0 +1,359 @@
+package com.isgneuro.nifi.tools.bloom;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.nifi.annotation.behavior.InputRequirement;
+import org.apache.nifi.annotation.behavior.WritesAttribute;
+import org.apache.nifi.annotation.behavior.WritesAttributes;
+import org.apache.nifi.annotation.documentation.CapabilityDescription;
+import org.apache.nifi.annotation.documentation.SeeAlso;
+import org.apache.nifi.annotation.documentation.Tags;
+import org.apache.nifi.annotation.lifecycle.OnScheduled;
+import org.apache.nifi.annotation.lifecycle.OnStopped;
+import org.apache.nifi.components.PropertyDescriptor;
+import org.apache.nifi.flowfile.FlowFile;
+import org.apache.nifi.processor.*;
+import org.apache.nifi.processor.exception.ProcessException;
+import org.apache.nifi.processor.util.StandardValidators;
+import org.apache.parquet.column.ColumnDescriptor;
+import org.apache.parquet.column.page.PageReadStore;
+import org.apache.parquet.example.data.Group;
+import org.apache.parquet.example.data.simple.convert.GroupRecordConverter;
+import org.apache.parquet.format.converter.ParquetMetadataConverter;
+import org.apache.parquet.hadoop.ParquetFileReader;
+import org.apache.parquet.hadoop.metadata.BlockMetaData;
+import org.apache.parquet.hadoop.metadata.FileMetaData;
+import org.apache.parquet.hadoop.metadata.ParquetMetadata;
+import org.apache.parquet.io.ColumnIOFactory;
+import org.apache.parquet.io.MessageColumnIO;
+import org.apache.parquet.io.RecordReader;
+import org.apache.parquet.schema.MessageType;
+import org.apache.parquet.schema.Type;
+import org.apache.spark.util.sketch.BloomFilter;
+import org.apache.spark.util.sketch.IncompatibleMergeException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.stream.Collectors;
+
+@InputRequirement(InputRequirement.Requirement.INPUT_REQUIRED)
+@Tags({"bloom", "filter", "tokens", "raw", "parquet", "rebuild"})
+@CapabilityDescription("Rebuilds the bloom file of the bucket from the Parquet files stored in the bucket directory. "
+        + "Only the _raw column and the numeric fields are read, row groups are tokenized in parallel "
+        + "and the new bloom file replaces the old one atomically.")
+@SeeAlso({BloomFilterCalculator.class})
+@WritesAttributes({
+        @WritesAttribute(attribute = "bloom.rebuild.files", description = "The number of Parquet files read"),
+        @WritesAttribute(attribute = "bloom.rebuild.row.groups", description = "The number of row groups read"),
+        @WritesAttribute(attribute = "bloom.rebuild.tokens", description = "The number of distinct tokens put into the bloom filter if tokens are saved")
+})
+public class RebuildBucketBloom extends AbstractProcessor {
+    static final String RAW_FIELD = "_raw";
+    private static final byte[] PARQUET_MAGIC = "PAR1".getBytes(StandardCharsets.US_ASCII);
+
+    static final PropertyDescriptor PARALLELISM = new PropertyDescriptor.Builder()
+            .name("Parallelism")
+            .defaultValue("4")
+            .description("Number of row groups tokenized at the same time. Threads are shared by all concurrent tasks of the processor")
+            .addValidator(StandardValidators.POSITIVE_INTEGER_VALIDATOR)
+            .required(true)
+            .build();
+
+    static final Relationship REL_SUCCESS = new Relationship.Builder()
+            .name("success")
+            .description("FlowFiles whose bucket bloom was rebuilt are routed to this relationship")
+            .build();
+    static final Relationship REL_FAILURE = new Relationship.Builder()
+            .name("failure")
+            .description("When a flowFile fails it is routed here.")
+            .build();
+
+    private List<PropertyDescriptor> properties;
+    private Set<Relationship> relationships;
+
+    private ExecutorService executor;
+    private int parallelism;
+    private long expectedNumTokens;
+    private double fpp;
+    private String bloomFilename;
+    private String tokenizerStr;
+    private boolean filterNumericTokens;
+    private int minTokenLength;
+    private boolean saveTokens;
+    private boolean buildPostingIndex;
+    private boolean compressBloom;
+    private List<String> numericFields;
+
+    @Override
+    protected void init(final ProcessorInitializationContext context) {
+        final List<PropertyDescriptor> properties = new ArrayList<>();
+        properties.add(BloomFilterCalculator.BUCKET_ID_VALUE);
+        properties.add(BloomFilterCalculator.EXPECTED_NUM_TOKENS);
+        properties.add(BloomFilterCalculator.FALSE_POSITIVE_PROBABILITY);
+        properties.add(BloomFilterCalculator.BLOOM_FILE_NAME);
+        properties.add(BloomFilterCalculator.TOKENIZER_STR);
+        properties.add(BloomFilterCalculator.FILTER_NUMERIC_TOKENS);
+        properties.add(BloomFilterCalculator.MIN_TOKEN_LENGTH);
+        properties.add(BloomFilterCalculator.SAVE_TOKENS);
+        properties.add(BloomFilterCalculator.BLOOM_FILE_ENCODING);
+        properties.add(BloomFilterCalculator.BUILD_POSTING_INDEX);
+        properties.add(BloomFilterCalculator.NUMERIC_FIELDS);
+        properties.add(PARALLELISM);
+        this.properties = Collections.unmodifiableList(properties);
+
+        final Set<Relationship> relationships = new HashSet<>();
+        relationships.add(REL_SUCCESS);
+        relationships.add(REL_FAILURE);
+        this.relationships = Collections.unmodifiableSet(relationships);
+    }
+
+    @Override
+    protected List<PropertyDescriptor> getSupportedPropertyDescriptors() {
+        return properties;
+    }
+
+    @Override
+    public Set<Relationship> getRelationships() {
+        return relationships;
+    }
+
+    @OnScheduled
+    public void onScheduled(final ProcessContext context) {
+        this.parallelism = context.getProperty(PARALLELISM).asInteger();
+        this.expectedNumTokens = context.getProperty(BloomFilterCalculator.EXPECTED_NUM_TOKENS).asLong();
+        this.fpp = context.getProperty(BloomFilterCalculator.FALSE_POSITIVE_PROBABILITY).asDouble();
+        this.bloomFilename = context.getProperty(BloomFilterCalculator.BLOOM_FILE_NAME).getValue();
+        this.tokenizerStr = context.getProperty(BloomFilterCalculator.TOKENIZER_STR).getValue();
+        this.filterNumericTokens = context.getProperty(BloomFilterCalculator.FILTER_NUMERIC_TOKENS).asBoolean();
+        this.minTokenLength = context.getProperty(BloomFilterCalculator.MIN_TOKEN_LENGTH).asInteger();
+        this.saveTokens = context.getProperty(BloomFilterCalculator.SAVE_TOKENS).asBoolean();
+        this.buildPostingIndex = context.getProperty(BloomFilterCalculator.BUILD_POSTING_INDEX).asBoolean();
+        this.compressBloom = BloomFilterCalculator.AUTO_ENCODING.getValue()
+                .equals(context.getProperty(BloomFilterCalculator.BLOOM_FILE_ENCODING).getValue());
+        this.numericFields = context.getProperty(BloomFilterCalculator.NUMERIC_FIELDS).isSet()
+                ? Arrays.stream(context.getProperty(BloomFilterCalculator.NUMERIC_FIELDS).getValue().split(","))
+                        .map(String::trim).filter(f -> !f.isEmpty()).collect(Collectors.toList())
+                : Collections.emptyList();
+        this.executor = Executors.newFixedThreadPool(parallelism);
+    }
+
+    @OnStopped
+    public void onStopped() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+    @Override
+    public void onTrigger(ProcessContext context, ProcessSession session) throws ProcessException {
+        FlowFile flowFile = session.get();
+        if (flowFile == null) {
+            return;
+        }
+
+        String pathToDir = context.getProperty(BloomFilterCalculator.BUCKET_ID_VALUE).evaluateAttributeExpressions(flowFile).getValue();
+        try {
+            Path bucket = Paths.get(pathToDir);
+            if (!Files.isDirectory(bucket)) {
+                throw new IOException(String.format("Invalid bucket_id. Path %s is not directory", pathToDir));
+            }
+            RebuildResult result = rebuild(bucket);
+            BloomFiles.writeAtomically(bucket.resolve(bloomFilename), result.bloomWithTokens.getBloomFilter(), compressBloom);
+            if (saveTokens) {
+                BloomFiles.writeTokensAtomically(bucket.resolve(bloomFilename + ".txt"), result.bloomWithTokens.getBloomTokens());
+            }
+            Path postingIndexFile = bucket.resolve(BloomFiles.postingIndexFileName(bloomFilename));
+            if (buildPostingIndex) {
+                BloomFiles.writeAtomically(postingIndexFile, result.bloomWithTokens.getPostingIndex());
+            } else if (Files.deleteIfExists(postingIndexFile)) {
+                getLogger().warn("Posting index {} was removed because it doesn't match the rebuilt bloom", postingIndexFile);
+            }
+            // a summary left from the old bloom would point range queries to magnitude tokens the new bloom doesn't have
+            Path numericSummaryFile = bucket.resolve(BloomFiles.numericSummaryFileName(bloomFilename));
+            if (!numericFields.isEmpty()) {
+                BloomFiles.writeAtomically(numericSummaryFile, result.bloomWithTokens.getNumericSummary());
+            } else if (Files.deleteIfExists(numericSummaryFile)) {
+                getLogger().warn("Numeric summary {} was removed because it doesn't match the rebuilt bloom", numericSummaryFile);
+            }
+
+            Map<String, String> attributes = new HashMap<>();
+            attributes.put("bloom.rebuild.files", String.valueOf(result.files));
+            attributes.put("bloom.rebuild.row.groups", String.valueOf(result.rowGroups));
+            if (saveTokens) {
+                attributes.put("bloom.rebuild.tokens", String.valueOf(result.bloomWithTokens.getBloomTokens().size()));
+            }
+            flowFile = session.putAllAttributes(flowFile, attributes);
+            session.adjustCounter("Buckets rebuilt", 1, false);
+            session.adjustCounter("Row groups read", result.rowGroups, false);
+            getLogger().info("Bloom for bucket {} rebuilt from {} files, {} row groups", pathToDir, result.files, result.rowGroups);
+            session.transfer(flowFile, REL_SUCCESS);
+        } catch (Exception e) {
+            getLogger().error("Failed to rebuild bloom for bucket {}: {}", pathToDir, e.getMessage(), e);
+            session.transfer(flowFile, REL_FAILURE);
+        }
+    }
+
+    @SuppressWarnings("deprecation")
+    private RebuildResult rebuild(Path bucket) throws IOException, InterruptedException, ExecutionException, IncompatibleMergeException {
+        Configuration conf = new Configuration();
+        RebuildResult result = new RebuildResult(new BloomWithTokens(BloomFilter.create(expectedNumTokens, fpp), new HashSet<>(),
+                buildPostingIndex ? new PostingIndex() : null, numericFields.isEmpty() ? null : new NumericSummary(numericFields)));
+        CompletionService<BloomWithTokens> completionService = new ExecutorCompletionService<>(executor);
+        // at most two row groups per thread are kept in memory
+        int maxInFlight = parallelism * 2;
+        int inFlight = 0;
+        try {
+            for (Path file : listParquetFiles(bucket)) {
+                org.apache.hadoop.fs.Path hadoopPath = new org.apache.hadoop.fs.Path(file.toUri());
+                ParquetMetadata footer = ParquetFileReader.readFooter(conf, hadoopPath, ParquetMetadataConverter.NO_FILTER);
+                MessageType schema = footer.getFileMetaData().getSchema();
+                if (!schema.containsField(RAW_FIELD)) {
+                    getLogger().warn("Parquet file {} has no {} column, skipping", file, RAW_FIELD);
+                    continue;
+                }
+                result.files++;
+                List<Type> columns = new ArrayList<>();
+                columns.add(schema.getType(RAW_FIELD));
+                for (String field : numericFields) {
+                    if (schema.containsField(field) && schema.getType(field).isPrimitive()) {
+                        columns.add(schema.getType(field));
+                    }
+                }
+                MessageType projection = new MessageType(schema.getName(), columns);
+                String fileName = file.getFileName().toString();
+                List<BlockMetaData> blocks = footer.getBlocks();
+                for (int i = 0; i < blocks.size(); i++) {
+                    BlockMetaData block = blocks.get(i);
+                    int rowGroup = i;
+                    if (inFlight == maxInFlight) {
+                        Future<BloomWithTokens> done = completionService.take();
+                        inFlight--;
+                        merge(result.bloomWithTokens, done.get());
+                    }
+                    completionService.submit(() -> tokenizeRowGroup(conf, hadoopPath, footer.getFileMetaData(), block, projection, fileName, rowGroup));
+                    inFlight++;
+                    result.rowGroups++;
+                }
+            }
+            while (inFlight > 0) {
+                Future<BloomWithTokens> done = completionService.take();
+                inFlight--;
+                merge(result.bloomWithTokens, done.get());
+            }
+        } finally {
+            // drain tasks that are still running if the rebuild failed
+            for (; inFlight > 0; inFlight--) {
+                try {
+                    completionService.take();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        }
+        return result;
+    }
+
+    private void merge(BloomWithTokens target, BloomWithTokens part) throws IncompatibleMergeException {
+        target.getBloomFilter().mergeInPlace(part.getBloomFilter());
+        if (saveTokens) {
+            target.getBloomTokens().addAll(part.getBloomTokens());
+        }
+        if (target.getPostingIndex() != null) {
+            target.getPostingIndex().merge(part.getPostingIndex());
+        }
+        if (target.getNumericSummary() != null) {
+            target.getNumericSummary().merge(part.getNumericSummary());
+        }
+    }
+
+    @SuppressWarnings("deprecation")
+    private BloomWithTokens tokenizeRowGroup(Configuration conf, org.apache.hadoop.fs.Path path, FileMetaData fileMetaData,
+                                             BlockMetaData block, MessageType projection, String fileName, int rowGroup) throws IOException {
+        StringSegmenter parser = new StringSegmenter(tokenizerStr, filterNumericTokens, minTokenLength);
+        Set<String> tokens = new HashSet<>();
+        NumericSummary numericSummary = numericFields.isEmpty() ? null : new NumericSummary(numericFields);
+        List<ColumnDescriptor> columns = projection.getColumns();
+        try (ParquetFileReader reader = new ParquetFileReader(conf, fileMetaData, path, Collections.singletonList(block), columns)) {
+            PageReadStore pages = reader.readNextRowGroup();
+            if (pages != null) {
+                MessageColumnIO columnIO = new ColumnIOFactory().getColumnIO(projection);
+                RecordReader<Group> records = columnIO.getRecordReader(pages, new GroupRecordConverter(projection));
+                for (long i = 0; i < pages.getRowCount(); i++) {
+                    Group group = records.read();
+                    if (group.getFieldRepetitionCount(RAW_FIELD) > 0) {
+                        tokens.addAll(parser.parseString(group.getString(RAW_FIELD, 0)));
+                    }
+                    if (numericSummary != null) {
+                        addMagnitudeTokens(group, projection, numericSummary, tokens);
+                    }
+                }
+            }
+        }
+        PostingIndex postingIndex = null;
+        if (buildPostingIndex) {
+            postingIndex = new PostingIndex();
+            postingIndex.add(fileName, rowGroup, tokens);
+        }
+        return new BloomWithTokens(BloomFilter.create(expectedNumTokens, fpp), tokens, postingIndex, numericSummary);
+    }
+
+    private void addMagnitudeTokens(Group group, MessageType projection, NumericSummary numericSummary, Set<String> tokens) {
+        for (String field : numericFields) {
+            if (!projection.containsField(field) || group.getFieldRepetitionCount(field) == 0) {
+                continue;
+            }
+            String magnitudeToken = numericSummary.add(field, group.getValueToString(projection.getFieldIndex(field), 0));
+            if (magnitudeToken != null) {
+                tokens.add(magnitudeToken);
+            }
+        }
+    }
+
+    static List<Path> listParquetFiles(Path bucket) throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(bucket)) {
+            for (Path file : stream) {
+                String name = file.getFileName().toString();
+                if (name.startsWith(".") || name.startsWith("_") || !Files.isRegularFile(file) || !hasParquetMagic(file)) {
+                    continue;
+                }
+                files.add(file);
+            }
+        }
+        Collections.sort(files);
+        return files;
+    }
+
+    private static boolean hasParquetMagic(Path file) throws IOException {
+        byte[] head = new byte[PARQUET_MAGIC.length];
+        try (InputStream is = Files.newInputStream(file)) {
+            int read = 0;
+            while (read < head.length) {
+                int n = is.read(head, read, head.length - read);
+                if (n < 0) {
+                    return false;
+                }
+                read += n;
+            }
+        }
+        return Arrays.equals(head, PARQUET_MAGIC);
+    }
+
+    private static class RebuildResult {
+        private final BloomWithTokens bloomWithTokens;
+        private int files;
+        private int rowGroups;
+
+        RebuildResult(BloomWithTokens bloomWithTokens) {
+            this.bloomWithTokens = bloomWithTokens;
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.isgneuro.nifi.tools.bloom;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import org.apache.spark.util.sketch.BloomFilter;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+
+/**
+ * Ring of bloom filters, each covering an equal slice of the time window.
+ * A key is considered seen if any of the live slices might contain it. When the current
+ * slice moves forward the oldest slices are replaced by empty filters, so a key put during
+ * a slice is forgotten when that slice is replaced: it is remembered for between
+ * the window minus one slice and the window.
+ *
+ * Keys are given as their 64-bit hashes, see {@link #keyHash(String)}, so callers can hold many of them cheaply.
+ */
+public class TimeWindowedBloomFilter {
+    private static final HashFunction HASH_FUNCTION = Hashing.murmur3_128();
+
+    private final BloomFilter[] slices;
+    private final long sliceMillis;
+    private final long expectedItemsPerSlice;
+    private final double fpp;
+    private long currentSlice = -1;
+
+    public TimeWindowedBloomFilter(long windowMillis, int numSlices, long expectedItemsPerSlice, double fpp) {
+        if (numSlices <= 0) {
+            throw new IllegalArgumentException("Number of slices must be positive");
+        }
+        this.slices = new BloomFilter[numSlices];
+        this.sliceMillis = Math.max(1, windowMillis / numSlices);
+        this.expectedItemsPerSlice = expectedItemsPerSlice;
+        this.fpp = fpp;
+    }
+
+    public static long keyHash(String key) {
+        return HASH_FUNCTION.hashString(key, StandardCharsets.UTF_8).asLong();
+    }
+
+    /**
+     * Returns true if the key might have been seen inside the window.
+     */
+    public synchronized boolean mightContain(long keyHash, long nowMillis) {
+        rotate(nowMillis);
+        for (BloomFilter slice : slices) {
+            if (slice != null && slice.mightContainLong(keyHash)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Remembers the keys in the current slice.
+     */
+    public synchronized void putAll(Collection<Long> keyHashes, long nowMillis) {
+        rotate(nowMillis);
+        final BloomFilter current = slices[(int) (currentSlice % slices.length)];
+        for (long keyHash : keyHashes) {
+            current.putLong(keyHash);
+        }
+    }
+
+    private void rotate(long nowMillis) {
+        long slice = nowMillis / sliceMillis;
+        if (slice <= currentSlice) {
+            return;
+        }
+        long expired = currentSlice < 0 ? slices.length : Math.min(slice - currentSlice, slices.length);
+        for (long i = 0; i < expired; i++) {
+            slices[(int) ((slice - i) % slices.length)] = null;
+        }
+        slices[(int) (slice % slices.length)] = BloomFilter.create(expectedItemsPerSlice, fpp);
+        currentSlice = slice;
+    }
+}
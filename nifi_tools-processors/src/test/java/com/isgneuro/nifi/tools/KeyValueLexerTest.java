@@ -0,0 +1,119 @@
+package com.isgneuro.nifi.tools;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class KeyValueLexerTest {
+    private final KeyValueLexer lexer = KeyValueLexer.of("=,::", ",;", 1000);
+
+    @Test
+    public void testPairs() {
+        assertEquals(Arrays.asList("a=1", "b=hello", "c=3"), pairs(lexer, "a=1 b=hello world c=3"));
+        assertEquals(Arrays.asList("src=1.2.3.4", "dst=5.6.7.8", "msg=a b c", "act=allow"),
+                pairs(lexer, "src=1.2.3.4 dst=5.6.7.8 msg=\"a b c\" act=allow"));
+        assertEquals(Arrays.asList("my key=hello \\\"q\\\" w", "x=y"), pairs(lexer, "\"my key\"=\"hello \\\"q\\\" w\" x::y"));
+        assertEquals(Collections.singletonList("k="), pairs(lexer, "=orphan k="));
+    }
+
+    @Test
+    public void testBlanksAroundConnector() {
+        assertEquals(Arrays.asList("src=1.2.3.4", "dst=5"), pairs(lexer, "src = 1.2.3.4 dst=5"));
+        assertEquals(Collections.singletonList("key=value"), pairs(lexer, "key = value"));
+        assertEquals(Arrays.asList("a=b", "c=1"), pairs(lexer, "a=  b c=1"));
+        assertEquals(Arrays.asList("k=q v", "z="), pairs(lexer, "k = \"q v\" z =  "));
+    }
+
+    @Test
+    public void testEmptyValues() {
+        assertEquals(Arrays.asList("user=", "action=login"), pairs(lexer, "user= action=login"));
+        assertEquals(Arrays.asList("a=", "b=2"), pairs(lexer, "a= b=2"));
+        assertEquals(Arrays.asList("a=", "b=c"), pairs(lexer, "a = b = c"));
+    }
+
+    @Test
+    public void testUnclosedQuote() {
+        assertEquals(Arrays.asList("url=http://x?a=b", "z=9", "w=\"unterminated"),
+                pairs(lexer, "url=http://x?a=b,z=9;w=\"unterminated"));
+    }
+
+    @Test
+    public void testValueLengthCap() {
+        final KeyValueLexer capped = KeyValueLexer.of("=", "", 5);
+        assertEquals(Arrays.asList("long=abcde", "next=1", "q=\"abcd"), pairs(capped, "long=abcdefghij next=1 q=\"abcdefgh\""));
+        assertEquals(Arrays.asList("long=abcdefghij", "next=1"), pairs(lexer, "long=abcdefghij next=1"));
+    }
+
+    @Test
+    public void testManyQuotes() {
+        final StringBuilder src = new StringBuilder();
+        for (int i = 0; i < 300000; i++) {
+            src.append(i % 3 == 0 ? '"' : i % 3 == 1 ? '=' : ' ');
+        }
+        final int[] count = new int[1];
+        lexer.lex(src, 0, src.length(), (s, pair) -> count[0]++);
+        assertEquals(50000, count[0]);
+    }
+
+    /**
+     * The values of a line matched by a learned template are the ones the lexer finds.
+     */
+    @Test
+    public void testTemplatesSameAsLexer() {
+        final KeyValueLexer lexer = KeyValueLexer.of("=,::", ",;", 200);
+        final KeyValueTemplates templates = new KeyValueTemplates(lexer);
+        final Random random = new Random(1);
+        final String alphabet = "ab =:\",;x1 ";
+        final String[] seeds = {"a=1 b=2 c=3", "src=1.2.3.4 dst=5.6.7.8 act=\"allow x\"", "x::1, y=2;z=\"q\"", "k=v"};
+        int hits = 0;
+        for (int i = 0; i < 50000; i++) {
+            final StringBuilder line = new StringBuilder();
+            if (random.nextInt(3) == 0) {
+                for (int len = random.nextInt(15); len > 0; len--) {
+                    line.append(alphabet.charAt(random.nextInt(alphabet.length())));
+                }
+            } else {
+                line.append(seeds[random.nextInt(seeds.length)]);
+                for (int mutations = random.nextInt(3); mutations > 0; mutations--) {
+                    final int pos = random.nextInt(line.length() + 1);
+                    if (random.nextBoolean()) {
+                        line.insert(pos, alphabet.charAt(random.nextInt(alphabet.length())));
+                    } else if (pos < line.length()) {
+                        line.deleteCharAt(pos);
+                    }
+                }
+            }
+            final String src = line.toString();
+            final String source = "s" + random.nextInt(2);
+            final KeyValueTemplates.Match match = templates.match(source, FieldNameCache.Naming.PLAIN, src);
+            if (match == null) {
+                final KeyValueTemplates.Recorder recorder = new KeyValueTemplates.Recorder((s, pair) -> {});
+                lexer.lex(src, 0, src.length(), recorder);
+                templates.learn(source, FieldNameCache.Naming.PLAIN, src, recorder, FieldNameCache.Stats.NONE);
+                continue;
+            }
+            hits++;
+            final List<String> matched = new ArrayList<>();
+            for (int k = 0; k < match.template.keys.length; k++) {
+                matched.add(match.template.keys[k] + "=" + src.substring(match.values[2 * k], match.values[2 * k + 1]));
+            }
+            assertEquals("[" + src + "]", pairs(lexer, src), matched);
+        }
+        // the seeds repeat, so most of them are matched by templates
+        assertTrue(hits > 5000);
+    }
+
+    private static List<String> pairs(KeyValueLexer lexer, String src) {
+        final List<String> pairs = new ArrayList<>();
+        lexer.lex(src, 0, src.length(), (s, pair) -> pairs.add(s.subSequence(pair.keyStart, pair.keyEnd) + "="
+                + s.subSequence(pair.valueStart, pair.valueEnd)));
+        return pairs;
+    }
+}
@@ -0,0 +1,185 @@
+package com.isgneuro.nifi.tools;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class LogPatternMatcherTest {
+
+    @Test
+    public void testFirstPatternWins() {
+        final LogPatternMatcher matcher = new LogPatternMatcher(Arrays.asList(
+                "%{WORD:word} %{INT:n}", "%{NOTSPACE:a} %{NOTSPACE:b}", "%{GREEDYDATA:all}"));
+        assertEquals(0, matcher.match("abc 12").pattern);
+        assertEquals(1, matcher.match("a.b 12").pattern);
+        assertEquals(2, matcher.match("a b c").pattern);
+        assertNull(new LogPatternMatcher(Arrays.asList("%{INT:n}", "%{WORD:w}")).match("a-1"));
+    }
+
+    @Test
+    public void testDataAndGreedyData() {
+        assertEquals(Arrays.asList("x", "y z"), captures("%{DATA:a} %{GREEDYDATA:b}", "x y z"));
+        assertEquals(Arrays.asList("x y", "z"), captures("%{GREEDYDATA:a} %{DATA:b}", "x y z"));
+        assertEquals(Arrays.asList("", "x"), captures("[%{DATA:a}] %{GREEDYDATA:b}", "[] x"));
+        assertEquals(Arrays.asList("10.0.0.1", "frank", "10/Oct/2000:13:55:36 -0700", "GET", "/apache_pb.gif", "1.0", "200", "2326"),
+                captures("%{IPV4:client} - %{NOTSPACE:user} [%{DATA:time}] \"%{WORD:method} %{NOTSPACE:path} HTTP/%{NUMBER:version}\" %{INT:status} %{INT:bytes}",
+                        "10.0.0.1 - frank [10/Oct/2000:13:55:36 -0700] \"GET /apache_pb.gif HTTP/1.0\" 200 2326"));
+    }
+
+    @Test
+    public void testQuotedString() {
+        final LogPatternMatcher matcher = new LogPatternMatcher(Arrays.asList("%{WORD:w} %{QS:msg} %{INT:n}"));
+        final String line = "x \"a \\\" b \\\\ c\" 7";
+        final LogPatternMatcher.Match match = matcher.match(line);
+        assertNotNull(match);
+        assertTrue(matcher.captures(0).get(1).quoted);
+        assertFalse(matcher.captures(0).get(0).quoted);
+        assertEquals("a \\\" b \\\\ c", line.substring(match.slots[2], match.slots[3]));
+        assertEquals("a \" b \\ c", LogPatternMatcher.unescape(line, match.slots[2], match.slots[3]));
+        assertEquals("7", line.substring(match.slots[4], match.slots[5]));
+    }
+
+    /**
+     * Random patterns and values compared with the regular expressions the patterns stand for.
+     */
+    @Test
+    public void testSameAsRegex() {
+        final Random random = new Random(7);
+        final String[] types = {"INT", "NUMBER", "WORD", "NOTSPACE", "IPV4", "IP", "DATA", "GREEDYDATA", "SPACE", "QS"};
+        final String literals = "ab:.-[]\" ";
+        final String alphabet = "ab1 9.:-\"\\[]\tF+_";
+        for (int set = 0; set < 500; set++) {
+            final List<String> patterns = new ArrayList<>();
+            final List<Pattern> regexes = new ArrayList<>();
+            for (int k = 1 + random.nextInt(3); k > 0; k--) {
+                final StringBuilder pattern = new StringBuilder();
+                int field = 0;
+                for (int e = 1 + random.nextInt(4); e > 0; e--) {
+                    if (random.nextBoolean()) pattern.append(literals.charAt(random.nextInt(literals.length())));
+                    pattern.append("%{").append(types[random.nextInt(types.length)]);
+                    if (random.nextInt(4) > 0) pattern.append(":f").append(field++);
+                    pattern.append('}');
+                }
+                if (random.nextBoolean()) pattern.append(literals.charAt(random.nextInt(literals.length())));
+                patterns.add(pattern.toString());
+                regexes.add(Pattern.compile(toRegex(pattern.toString()), Pattern.DOTALL));
+            }
+            final LogPatternMatcher matcher = new LogPatternMatcher(patterns);
+            for (int i = 0; i < 200; i++) {
+                final StringBuilder value = new StringBuilder();
+                for (int len = random.nextInt(14); len > 0; len--) {
+                    value.append(alphabet.charAt(random.nextInt(alphabet.length())));
+                }
+                final String line = value.toString();
+                int expected = -1;
+                Matcher regexMatch = null;
+                for (int k = 0; k < regexes.size() && expected < 0; k++) {
+                    final Matcher m = regexes.get(k).matcher(line);
+                    if (m.matches()) {
+                        expected = k;
+                        regexMatch = m;
+                    }
+                }
+                final LogPatternMatcher.Match match = matcher.match(line);
+                assertEquals(patterns + " [" + line + "]", expected, match == null ? -1 : match.pattern);
+                if (match == null) {
+                    continue;
+                }
+                for (int c = 0; c < matcher.captures(expected).size(); c++) {
+                    assertEquals(patterns.get(expected) + " [" + line + "]",
+                            regexMatch.group(c + 1), line.substring(match.slots[2 * c], match.slots[2 * c + 1]));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testConcurrentMatches() throws Exception {
+        final LogPatternMatcher matcher = new LogPatternMatcher(Arrays.asList("%{IPV4:client} %{WORD:a} %{INT:n}", "%{GREEDYDATA:all}"));
+        final String[] lines = {"1.2.3.4 foo 12", "zzz", "9.9.9.9 bar 7"};
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            final List<Future<Boolean>> results = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                results.add(executor.submit(() -> {
+                    for (int i = 0; i < 50000; i++) {
+                        final String line = lines[i % lines.length];
+                        final LogPatternMatcher.Match match = matcher.match(line);
+                        final boolean ok = line.equals("zzz")
+                                ? match.pattern == 1 && line.substring(match.slots[0], match.slots[1]).equals(line)
+                                : match.pattern == 0 && line.substring(match.slots[4], match.slots[5]).equals(line.substring(line.lastIndexOf(' ') + 1));
+                        if (!ok) {
+                            return false;
+                        }
+                    }
+                    return true;
+                }));
+            }
+            for (Future<Boolean> result : results) {
+                assertTrue(result.get());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static List<String> captures(String pattern, String line) {
+        final LogPatternMatcher matcher = new LogPatternMatcher(Arrays.asList(pattern));
+        final LogPatternMatcher.Match match = matcher.match(line);
+        assertNotNull(line, match);
+        final List<String> values = new ArrayList<>();
+        for (int c = 0; c < matcher.captures(match.pattern).size(); c++) {
+            values.add(line.substring(match.slots[2 * c], match.slots[2 * c + 1]));
+        }
+        return values;
+    }
+
+    /**
+     * @return the regular expression of a pattern, DATA is lazy and GREEDYDATA greedy as in grok
+     */
+    private static String toRegex(String pattern) {
+        final StringBuilder regex = new StringBuilder();
+        int i = 0;
+        while (i < pattern.length()) {
+            if (pattern.startsWith("%{", i)) {
+                final int close = pattern.indexOf('}', i);
+                final String[] element = pattern.substring(i + 2, close).split(":");
+                final String group = element.length == 2 ? "(" : "(?:";
+                i = close + 1;
+                switch (element[0]) {
+                    case "INT": regex.append(group).append("[+-]?[0-9]+)"); break;
+                    case "NUMBER": regex.append(group).append("[+-]?[0-9]+(?:\\.[0-9]+)?)"); break;
+                    case "WORD": regex.append(group).append("[0-9a-zA-Z_]+)"); break;
+                    case "NOTSPACE": regex.append(group).append("[^ \\t]+)"); break;
+                    case "IPV4": regex.append(group).append("[0-9][0-9]?[0-9]?(?:\\.[0-9][0-9]?[0-9]?){3})"); break;
+                    case "IP": regex.append(group).append("[0-9a-fA-F.:]+)"); break;
+                    case "DATA": regex.append(group).append(".*?)"); break;
+                    case "GREEDYDATA": regex.append(group).append(".*)"); break;
+                    case "SPACE": regex.append(group).append("[ \\t]*)"); break;
+                    case "QS": regex.append('"').append(group).append("(?:[^\"\\\\]|\\\\.)*)\""); break;
+                    default: throw new IllegalArgumentException(element[0]);
+                }
+            } else if (pattern.charAt(i) == ' ') {
+                while (i < pattern.length() && pattern.charAt(i) == ' ') i++;
+                regex.append("[ \\t]+");
+            } else {
+                regex.append(Pattern.quote(String.valueOf(pattern.charAt(i++))));
+            }
+        }
+        return regex.toString();
+    }
+}
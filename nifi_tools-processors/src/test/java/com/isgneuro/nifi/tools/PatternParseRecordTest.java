@@ -0,0 +1,97 @@
+package com.isgneuro.nifi.tools;
+
+import org.apache.nifi.serialization.SimpleRecordSchema;
+import org.apache.nifi.serialization.record.MapRecord;
+import org.apache.nifi.serialization.record.Record;
+import org.apache.nifi.serialization.record.RecordField;
+import org.apache.nifi.serialization.record.RecordFieldType;
+import org.apache.nifi.util.TestRunner;
+import org.apache.nifi.util.TestRunners;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class PatternParseRecordTest {
+    private PatternParseRecord processor;
+    private TestRunner runner;
+
+    @Before
+    public void setUp() {
+        processor = new PatternParseRecord();
+        runner = TestRunners.newTestRunner(processor);
+    }
+
+    @Test
+    public void testPatternsInNameOrder() {
+        runner.setProperty("2", "%{GREEDYDATA:all}");
+        runner.setProperty("1", "%{WORD:method} %{INT:status}");
+        runner.setProperty(PatternParseRecord.PATTERN_NAME_FIELD, "pattern");
+        processor.compilePatterns(runner.getProcessContext());
+
+        final Record matched = process("GET 200");
+        assertEquals("1", matched.getValue("pattern"));
+        assertEquals("GET", matched.getValue("method"));
+        assertNull(matched.getValue("all"));
+
+        final Record other = process("GET /index.html");
+        assertEquals("2", other.getValue("pattern"));
+        assertEquals("GET /index.html", other.getValue("all"));
+    }
+
+    @Test
+    public void testTypedValues() {
+        runner.setProperty("1", "%{WORD:method} %{INT:status} %{NUMBER:time} %{QS:msg}");
+        processor.compilePatterns(runner.getProcessContext());
+
+        final Record record = process("GET 200 0.5 \"say \\\"hi\\\"\"");
+        assertEquals(200L, record.getValue("status"));
+        assertEquals(0.5, record.getValue("time"));
+        assertEquals("say \"hi\"", record.getValue("msg"));
+        assertEquals(RecordFieldType.LONG, fieldType(record, "status"));
+        assertEquals(RecordFieldType.DOUBLE, fieldType(record, "time"));
+    }
+
+    @Test
+    public void testIntOverflowIsString() {
+        runner.setProperty("1", "%{WORD:name} %{INT:count}");
+        processor.compilePatterns(runner.getProcessContext());
+
+        final Record overflow = process("a 99999999999999999999");
+        assertEquals("99999999999999999999", overflow.getValue("count"));
+        assertEquals(RecordFieldType.STRING, fieldType(overflow, "count"));
+
+        // only the field of the overflowing record is a string
+        final Record next = process("b 5");
+        assertEquals(5L, next.getValue("count"));
+        assertEquals(RecordFieldType.LONG, fieldType(next, "count"));
+    }
+
+    @Test
+    public void testUntypedValues() {
+        runner.setProperty("1", "%{WORD:name} %{INT:count}");
+        runner.setProperty(PatternParseRecord.TYPED_VALUES, PatternParseRecord.TYPED_VALUES_UNSET.getValue());
+        processor.compilePatterns(runner.getProcessContext());
+
+        final Record record = process("a 5");
+        assertEquals("5", record.getValue("count"));
+        assertEquals(RecordFieldType.STRING, fieldType(record, "count"));
+    }
+
+    private Record process(String raw) {
+        final Map<String, Object> values = new HashMap<>();
+        values.put("_raw", raw);
+        final Record record = new MapRecord(new SimpleRecordSchema(Collections.singletonList(
+                new RecordField("_raw", RecordFieldType.STRING.getDataType()))), values);
+        return processor.process(record, null, runner.getProcessContext());
+    }
+
+    private static RecordFieldType fieldType(Record record, String name) {
+        return record.getSchema().getField(name).get().getDataType().getFieldType();
+    }
+}
@@ -0,0 +1,115 @@
+package com.isgneuro.nifi.tools;
+
+import org.junit.Test;
+
+import javax.json.Json;
+import javax.json.JsonException;
+import javax.json.stream.JsonParser;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compares the events of the scanner with the ones of the javax.json parser over {@link JsonCharSequenceReader},
+ * which the scanner replaces.
+ */
+public class StructuralJsonScannerTest {
+
+    @Test
+    public void testBackslashRunsAcrossBlocks() {
+        for (int run = 0; run <= 5; run++) {
+            for (int offset = 0; offset < 140; offset++) {
+                final StringBuilder json = new StringBuilder();
+                for (int i = 0; i < offset; i++) {
+                    json.append(' ');
+                }
+                json.append("{\"a\":\"x");
+                for (int i = 0; i < run; i++) {
+                    json.append('\\');
+                }
+                // an odd run escapes the quote, which is then followed by structural chars inside the string
+                json.append(run % 2 == 1 ? "\"}]\"" : "\"");
+                json.append(",\"b\":[1,2.5,-3e2,true,false,null,{}],\"c\\\\\":\"\\\\\"}");
+                assertSameEvents(json.toString(), JsonCharSequenceReader.NO_SEPARATORS, false);
+            }
+        }
+    }
+
+    @Test
+    public void testLongStrings() {
+        final StringBuilder value = new StringBuilder();
+        for (int i = 0; i < 300; i++) {
+            value.append(i % 7 == 0 ? "\\\"" : i % 11 == 0 ? "\\\\" : i % 13 == 0 ? "\\u0041" : "{,:]");
+        }
+        assertSameEvents("[\"" + value + "\",\"" + value + "\"]", JsonCharSequenceReader.NO_SEPARATORS, false);
+    }
+
+    @Test
+    public void testNextDocument() {
+        final String json = "{\"a\":1} \n{\"b\":[\"x\",{\"c\":null}]}\n[2,3]";
+        final int first = json.indexOf('}') + 1;
+        final int second = json.lastIndexOf('\n');
+        assertSameEvents(json, new int[]{first, first + 2, second, second + 1}, false);
+        final String escaped = "{\"a\":\"b\\\\\"};{\"a\":2}";
+        final int separator = escaped.indexOf(';');
+        assertSameEvents(escaped, new int[]{separator, separator + 1}, false);
+    }
+
+    @Test
+    public void testControlCharsEscaped() {
+        assertSameEvents("{\"a\":\"x\ty\",\"b\":\"line\nbreak\"}", JsonCharSequenceReader.NO_SEPARATORS, true);
+    }
+
+    @Test
+    public void testMalformed() {
+        final String[] malformed = {
+                "{\"a\":1", "{\"a\" 1}", "[1,]", "{\"a\":\"x}", "[1 2]", "{\"a\":tru}", "{\"a\":1} x", "{,}", "{\"a\":1,}", "[", "\"x\\\""
+        };
+        for (String json : malformed) {
+            final List<String> expected = events(Json.createParser(reader(json, JsonCharSequenceReader.NO_SEPARATORS, false)));
+            final List<String> actual = events(new StructuralJsonScanner(json, 0, json.length(), JsonCharSequenceReader.NO_SEPARATORS, false));
+            assertTrue(json, expected.get(expected.size() - 1).equals(ERROR));
+            assertTrue(json, actual.get(actual.size() - 1).equals(ERROR));
+        }
+    }
+
+    private static final String ERROR = "error";
+
+    private static void assertSameEvents(String json, int[] separators, boolean escapeControlChars) {
+        final List<String> expected = events(Json.createParser(reader(json, separators, escapeControlChars)));
+        final List<String> actual = events(new StructuralJsonScanner(json, 0, json.length(), separators, escapeControlChars));
+        assertEquals(json, expected, actual);
+    }
+
+    private static JsonCharSequenceReader reader(String json, int[] separators, boolean escapeControlChars) {
+        return new JsonCharSequenceReader(json, 0, json.length(), separators, escapeControlChars);
+    }
+
+    /**
+     * @return the events with their values, ending with {@link #ERROR} if the parser failed
+     */
+    private static List<String> events(JsonParser parser) {
+        final List<String> events = new ArrayList<>();
+        try {
+            while (parser.hasNext()) {
+                final JsonParser.Event event = parser.next();
+                switch (event) {
+                    case KEY_NAME:
+                    case VALUE_STRING:
+                        events.add(event + " " + parser.getString());
+                        break;
+                    case VALUE_NUMBER:
+                        events.add(event + " " + parser.getString() + " " + parser.isIntegralNumber());
+                        break;
+                    default:
+                        events.add(event.toString());
+                }
+            }
+        } catch (JsonException e) {
+            events.add(ERROR);
+        }
+        return events;
+    }
+}